@@ -0,0 +1,400 @@
+package gui;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+// Benchmarks of the processing path on synthetic read streams.
+// Every benchmark runs for a number of timed iterations after warm-up and reports throughput, the
+// latency percentiles of single calls and the bytes allocated per operation, for every combination of
+// window, EPC count, channel count and max_tag_history given on the command line:
+//
+//   java -cp "lib/*:out" gui.ProcessingBenchmark --window 1,5 --epcs 2,8 --channels 16,50 --history 2000,20000
+//
+// Other options: --band <DTW band half width, 0 for none>, --filter <substring of the benchmark name>,
+// --warmup <iterations>, --iterations <n>, --millis <per iteration>.
+// The kernels are checked against their reference implementations first ("check.*" lines); a mismatch
+// aborts the run. --filter check runs only the checks.
+public class ProcessingBenchmark {
+
+    private static final int READ_RATE = 700;
+    private static final int STREAM_LENGTH = 1 << 16;     // Synthetic reads generated per parameter set
+    private static final int MAX_LATENCY_SAMPLES = 1 << 20;
+
+    private static volatile double sink; // Keeps results alive so the JIT can't drop the work
+
+    private interface Operation {
+        // Perform one call, returning something derived from its result
+        double run(int i);
+    }
+
+    public static void main(String[] args) throws Exception {
+        double[] windows = {1, 5};
+        int[] epcCounts = {2, 8};
+        int[] channelCounts = {16, 50};
+        int[] histories = {2000, 20000};
+        int dtwBand = 0;
+        String filter = "";
+        int warmup = 3;
+        int iterations = 5;
+        int millis = 1000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--window": windows = Arrays.stream(args[i + 1].split(",")).mapToDouble(Double::parseDouble).toArray(); break;
+                case "--epcs": epcCounts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--channels": channelCounts = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--history": histories = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray(); break;
+                case "--band": dtwBand = Integer.parseInt(args[i + 1]); break;
+                case "--filter": filter = args[i + 1]; break;
+                case "--warmup": warmup = Integer.parseInt(args[i + 1]); break;
+                case "--iterations": iterations = Integer.parseInt(args[i + 1]); break;
+                case "--millis": millis = Integer.parseInt(args[i + 1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        ProcessingBenchmark benchmark = new ProcessingBenchmark(dtwBand, filter, warmup, iterations, millis);
+
+        System.out.println(String.format("%-34s %-28s %14s %10s %10s %10s %10s %10s",
+                "benchmark", "params", "ops/s", "+-", "p50 ns", "p99 ns", "p99.9 ns", "B/op"));
+        benchmark.runChecks();
+        benchmark.runDecoding();
+        for (double window : windows) {
+            for (int epcs : epcCounts) {
+                for (int channels : channelCounts) {
+                    for (int history : histories) {
+                        benchmark.runPipeline(window, epcs, channels, history);
+                    }
+                }
+            }
+        }
+    }
+
+    private final int dtwBand;
+    private final String filter;
+    private final int warmup;
+    private final int iterations;
+    private final int millis;
+
+    private ProcessingBenchmark(int dtwBand, String filter, int warmup, int iterations, int millis) {
+        this.dtwBand = dtwBand;
+        this.filter = filter;
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.millis = millis;
+    }
+
+    // Results of the kernels against their reference implementations, on random and edge case inputs
+    private void runChecks() {
+        checkDtw();
+        checkPhaseKernel();
+    }
+
+    // Unbanded DtwKernel against exact DTW over the full cost matrix, which is what FastDTW computed with the
+    // radius of a whole window
+    private void checkDtw() {
+        if (!"check.dtw.reference".contains(filter)) {
+            return;
+        }
+        Random random = new Random(11);
+        DtwKernel kernel = DtwKernel.forCurrentThread();
+        double worst = 0;
+        int trials = 500;
+        for (int trial = 0; trial < trials; trial++) {
+            double[] s1 = randomPhases(random, 1 + random.nextInt(150));
+            double[] s2 = randomPhases(random, 1 + random.nextInt(150));
+            double sum = kernel.alignedPhaseDiffSum(s1, 0, s1.length, s2, 0, s2.length, 0);
+            double[] reference = referenceDtw(s1, s2);
+            double error = Math.abs(sum - reference[0]) / Math.max(1, Math.abs(reference[0]));
+            if (kernel.getPathLength() != (int) reference[1] || error > 1e-9) {
+                throw new IllegalStateException(String.format("DtwKernel sum %s over %d cells, reference %s over %d cells",
+                        sum, kernel.getPathLength(), reference[0], (int) reference[1]));
+            }
+            worst = Math.max(worst, error);
+        }
+        check("check.dtw.reference", trials + " random pairs", String.format("max relative error %.1e", worst));
+    }
+
+    // PhaseDiffKernel's bulk loop against the scalar reference loop, bit for bit: every pair of edge case
+    // phases (differences of exactly 135 and 270 degrees and their neighbours, 0/360, NaN), then random
+    // sequences sprinkled with them whose ring buffers wrap
+    private void checkPhaseKernel() {
+        if (!"check.phaseKernel.edges".contains(filter)) {
+            return;
+        }
+        double[] edges = {0, -0.0, Double.MIN_VALUE, 45, Math.nextDown(135.0), 135, Math.nextUp(135.0), 180,
+                Math.nextDown(270.0), 270, Math.nextUp(270.0), 315, Math.nextDown(360.0), 360, -135, -270, 405, Double.NaN};
+        int compared = 0;
+        for (double phase1 : edges) {
+            for (double phase2 : edges) {
+                PhaseIndex.PhaseSeries series1 = new PhaseIndex.PhaseSeries();
+                PhaseIndex.PhaseSeries series2 = new PhaseIndex.PhaseSeries();
+                series1.addLast(phase1);
+                series2.addLast(phase2);
+                comparePhaseKernels(series1, series2, 1);
+                compared++;
+            }
+        }
+        Random random = new Random(13);
+        for (int trial = 0; trial < 2000; trial++) {
+            PhaseIndex.PhaseSeries series1 = new PhaseIndex.PhaseSeries();
+            PhaseIndex.PhaseSeries series2 = new PhaseIndex.PhaseSeries();
+            // Cycle reads through both series so their heads move and the windows wrap around the arrays
+            int length = random.nextInt(300);
+            int cycles = random.nextInt(400);
+            for (int i = 0; i < length + cycles; i++) {
+                series1.addLast(random.nextInt(8) == 0 ? edges[random.nextInt(edges.length)] : random.nextDouble() * 360);
+                series2.addLast(random.nextInt(8) == 0 ? edges[random.nextInt(edges.length)] : random.nextDouble() * 360);
+                if (i >= length) {
+                    series1.removeFirst();
+                    series2.removeFirst();
+                }
+            }
+            comparePhaseKernels(series1, series2, length);
+            compared++;
+        }
+        check("check.phaseKernel.edges", compared + " sequences", "bulk and scalar bit-identical");
+    }
+
+    private static void comparePhaseKernels(PhaseIndex.PhaseSeries series1, PhaseIndex.PhaseSeries series2, int length) {
+        double bulk = PhaseDiffKernel.sum(series1, series2, length);
+        double scalar = PhaseDiffKernel.scalarSum(series1, series2, length);
+        if (Double.doubleToLongBits(bulk) != Double.doubleToLongBits(scalar)) {
+            throw new IllegalStateException("PhaseDiffKernel bulk sum " + bulk + ", scalar sum " + scalar + " over " + length
+                    + " phases starting with " + series1.get(0) + " and " + series2.get(0));
+        }
+    }
+
+    // Wrapped phase difference sum along the optimal path of the full cost matrix and the path length
+    private static double[] referenceDtw(double[] s1, double[] s2) {
+        double[][] cost = new double[s1.length][s2.length];
+        for (int i = 0; i < s1.length; i++) {
+            for (int j = 0; j < s2.length; j++) {
+                double local = Math.abs(s1[i] - s2[j]);
+                if (i == 0 && j == 0) {
+                    cost[i][j] = local;
+                } else {
+                    double diagonal = i > 0 && j > 0 ? cost[i - 1][j - 1] : Double.POSITIVE_INFINITY;
+                    double above = i > 0 ? cost[i - 1][j] : Double.POSITIVE_INFINITY;
+                    double left = j > 0 ? cost[i][j - 1] : Double.POSITIVE_INFINITY;
+                    cost[i][j] = local + Math.min(diagonal, Math.min(above, left));
+                }
+            }
+        }
+        double sum = 0;
+        int length = 0;
+        int i = s1.length - 1;
+        int j = s2.length - 1;
+        while (true) {
+            sum += SensorPipeline.wrappedPhaseDiff(s1[i], s2[j]);
+            length++;
+            if (i == 0 && j == 0) {
+                break;
+            }
+            double diagonal = i > 0 && j > 0 ? cost[i - 1][j - 1] : Double.POSITIVE_INFINITY;
+            double above = i > 0 ? cost[i - 1][j] : Double.POSITIVE_INFINITY;
+            double left = j > 0 ? cost[i][j - 1] : Double.POSITIVE_INFINITY;
+            if (diagonal <= above && diagonal <= left) {
+                i--;
+                j--;
+            } else if (left < above) {
+                j--;
+            } else {
+                i--;
+            }
+        }
+        return new double[] {sum, length};
+    }
+
+    private static double[] randomPhases(Random random, int length) {
+        double[] phases = new double[length];
+        for (int i = 0; i < length; i++) {
+            phases[i] = random.nextDouble() * 360;
+        }
+        return phases;
+    }
+
+    private static void check(String name, String params, String result) {
+        System.out.println(String.format("%-34s %-28s %s", name, params, result));
+    }
+
+    // EPC decoding done by the reader's listener for every report, on a mix of known and foreign EPCs
+    private void runDecoding() throws Exception {
+        ConfigSnapshot snapshot = snapshot(1, 8, 20000);
+        EpcTable epcTable = snapshot.getEpcTable();
+        Random random = new Random(1);
+        String[] reported = new String[1024];
+        for (int i = 0; i < reported.length; i++) {
+            // The SDK prints EPCs as space separated groups of four hex digits
+            String epc = random.nextInt(4) == 0 ? String.format("%024X", random.nextLong()) : epcTable.name(random.nextInt(epcTable.size()));
+            reported[i] = epc.replaceAll("(.{4})(?!$)", "$1 ");
+        }
+        run("listener.decodeEpc", "", i -> epcTable.find(reported[i & (reported.length - 1)]));
+    }
+
+    private void runPipeline(double window, int epcCount, int channelCount, int history) throws Exception {
+        String params = String.format("w=%s e=%d c=%d h=%d", window, epcCount, channelCount, history);
+        ConfigSnapshot snapshot = snapshot(window, epcCount, history);
+        ConfigSnapshot.SensorConfig sensor = snapshot.getSensor("bench");
+
+        // Synthetic stream: random EPCs of the sensor, channels hopping every 140 reads (200 ms at 700 reads/s)
+        Random random = new Random(42);
+        int[] epcIds = new int[STREAM_LENGTH];
+        long[] timestamps = new long[STREAM_LENGTH];
+        double[] channels = new double[STREAM_LENGTH];
+        double[] phases = new double[STREAM_LENGTH];
+        double[] rssis = new double[STREAM_LENGTH];
+        double[] channelPlan = new double[channelCount];
+        for (int c = 0; c < channelCount; c++) {
+            channelPlan[c] = 902.75 + 0.5 * c;
+        }
+        for (int i = 0; i < STREAM_LENGTH; i++) {
+            int tag = random.nextInt(epcCount);
+            int hop = (i / 140) % channelCount;
+            epcIds[i] = sensor.getEpcId(tag);
+            timestamps[i] = i * 1_000_000L / READ_RATE;
+            channels[i] = channelPlan[hop];
+            phases[i] = ((hop * 37 + tag * 20 + random.nextGaussian() * 2) % 360 + 360) % 360;
+            rssis[i] = -45 + random.nextGaussian() * 2;
+        }
+
+        SensorPipeline ingest = new SensorPipeline(sensor, snapshot.getEpcTable(), history, dtwBand, true);
+        run("pipeline.add", params, i -> {
+            int r = i & (STREAM_LENGTH - 1);
+            ingest.add(epcIds[r], timestamps[r], channels[r], phases[r], rssis[r]);
+            return r;
+        });
+
+        SensorPipeline filtered = new SensorPipeline(snapshot.getSensor("hampel"), snapshot.getEpcTable(), history, dtwBand,
+                true);
+        run("pipeline.add.hampel", params, i -> {
+            int r = i & (STREAM_LENGTH - 1);
+            filtered.add(epcIds[r], timestamps[r], channels[r], phases[r], rssis[r]);
+            return r;
+        });
+
+        // The computations run on a full buffer
+        SensorPipeline full = new SensorPipeline(sensor, snapshot.getEpcTable(), history, dtwBand, true);
+        SensorPipeline scalar = new SensorPipeline(sensor, snapshot.getEpcTable(), history, dtwBand, false);
+        for (int i = 0; i < Math.max(history, STREAM_LENGTH); i++) {
+            int r = i & (STREAM_LENGTH - 1);
+            full.add(epcIds[r], timestamps[r], channels[r], phases[r], rssis[r]);
+            scalar.add(epcIds[r], timestamps[r], channels[r], phases[r], rssis[r]);
+        }
+        if ("check.phaseKernel.pipeline".contains(filter)) {
+            double[] bulk = full.calculatePairPhaseDifferences(false, false);
+            double[] reference = scalar.calculatePairPhaseDifferences(false, false);
+            if (!Arrays.equals(bulk, reference)) {
+                throw new IllegalStateException("bulk pairs " + Arrays.toString(bulk) + ", scalar pairs " + Arrays.toString(reference));
+            }
+            check("check.phaseKernel.pipeline", params, "bulk and scalar bit-identical");
+        }
+        run("pipeline.phaseDiff.matched", params, i -> full.calculateAvgPhaseDifference(false, false));
+        run("pipeline.phaseDiff.matchedScalar", params, i -> scalar.calculateAvgPhaseDifference(false, false));
+        run("pipeline.phaseDiff.streaming", params, i -> full.calculateAvgPhaseDifference(false, true));
+        run("pipeline.phaseDiff.dtw", params, i -> full.calculateAvgPhaseDifference(true, false));
+
+        // Every pair of the same EPCs, matched in one pass
+        SensorPipeline allPairs = new SensorPipeline(snapshot.getSensor("pairs"), snapshot.getEpcTable(), history, dtwBand,
+                true);
+        for (int i = 0; i < Math.max(history, STREAM_LENGTH); i++) {
+            int r = i & (STREAM_LENGTH - 1);
+            allPairs.add(epcIds[r], timestamps[r], channels[r], phases[r], rssis[r]);
+        }
+        run("pipeline.phaseDiff.allPairs", params, i -> allPairs.calculateAvgPhaseDifference(false, false));
+        run("pipeline.getLastNTags", params, i -> {
+            // Materialize what the GUI and the stream consume per tick
+            List<Map<String, Object>> tags = full.getLastNTags(READ_RATE);
+            double sum = 0;
+            for (Map<String, Object> tag : tags) {
+                sum += (Double) tag.get("phase");
+            }
+            return sum;
+        });
+    }
+
+    // Warm up, then measure throughput, per-call latency and allocation of one operation
+    private void run(String name, String params, Operation operation) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long[] latencies = new long[MAX_LATENCY_SAMPLES];
+        double[] throughputs = new double[iterations];
+        int samples = 0;
+        long allocated = 0;
+        long calls = 0;
+        int i = 0;
+
+        for (int iteration = -warmup; iteration < iterations; iteration++) {
+            boolean measured = iteration >= 0;
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            long end = start + millis * 1_000_000L;
+            long iterationCalls = 0;
+            long now = start;
+            double result = 0;
+            while (now < end) {
+                long before = now;
+                result += operation.run(i++);
+                now = System.nanoTime();
+                if (measured && samples < latencies.length) {
+                    latencies[samples++] = now - before;
+                }
+                iterationCalls++;
+            }
+            sink = result;
+            if (measured) {
+                throughputs[iteration] = iterationCalls * 1e9 / (now - start);
+                allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+                calls += iterationCalls;
+            }
+        }
+
+        double mean = Arrays.stream(throughputs).average().orElse(0);
+        double deviation = Math.sqrt(Arrays.stream(throughputs).map(t -> (t - mean) * (t - mean)).sum() / Math.max(1, iterations - 1));
+        Arrays.sort(latencies, 0, samples);
+        System.out.println(String.format("%-34s %-28s %14.1f %10.1f %10d %10d %10d %10.1f",
+                name, params, mean, deviation, percentile(latencies, samples, 0.5), percentile(latencies, samples, 0.99),
+                percentile(latencies, samples, 0.999), calls > 0 ? (double) allocated / calls : 0));
+    }
+
+    private static long percentile(long[] sorted, int count, double p) {
+        return count == 0 ? 0 : sorted[Math.min(count - 1, (int) (p * count))];
+    }
+
+    // Configuration with a single sensor "bench" of the given shape
+    private static ConfigSnapshot snapshot(double window, int epcCount, int history) throws Exception {
+        Random random = new Random(7);
+        List<String> epcs = new ArrayList<>();
+        for (int i = 0; i < epcCount; i++) {
+            epcs.add(String.format("%08X%016X", random.nextInt(), random.nextLong()));
+        }
+        // "bench" measures its first two EPCs, "pairs" every pair of the same EPCs, "hampel" filters them
+        StringBuilder xml = new StringBuilder("<configurations><sensor_configs>");
+        for (String sensor : new String[] {"bench", "pairs", "hampel"}) {
+            xml.append("<sensor name=\"").append(sensor).append("\"><epcs>");
+            for (String epc : epcs) {
+                xml.append("<epc>").append(epc).append("</epc>");
+            }
+            xml.append("</epcs><window>").append(window).append("</window>");
+            if (sensor.equals("pairs")) {
+                xml.append("<pairs>all</pairs>");
+            } else if (sensor.equals("hampel")) {
+                xml.append("<filter><type>hampel</type><length>9</length></filter>");
+            }
+            xml.append("</sensor>");
+        }
+        xml.append("</sensor_configs>")
+                .append("<sensor_def>bench</sensor_def><read_rate>").append(READ_RATE).append("</read_rate>")
+                .append("<max_tag_history>").append(history).append("</max_tag_history></configurations>");
+        return ConfigSnapshot.parse(DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8))));
+    }
+}
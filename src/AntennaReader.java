@@ -1,38 +1,35 @@
 package gui;
 
 import com.impinj.octane.*;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-public class AntennaReader {
+// Tag source backed by a physical Impinj reader through the Octane SDK
+public class AntennaReader extends QueuedTagSource {
 
-    private TagData tagData; // TagData object to store tag records
     private ImpinjReader reader;
-    private Configs config;
-
-    private Map<String, String> epcSensorMapping;
 
+    // Reader for the first <impinj> entry of params.xml
     public AntennaReader(TagData tagData) {
-        this.tagData = tagData;
-        this.reader = new ImpinjReader(); // Initialize reader
-
-        // Get the Configs object
-        this.config = Configs.getCfgInstance();
+        this(tagData, Configs.getCfgInstance().getSnapshot().getReaders().get(0));
+    }
 
-        this.epcSensorMapping = config.getEpcSensorMap();
+    public AntennaReader(TagData tagData, ConfigSnapshot.ReaderEndpoint endpoint) {
+        super(tagData, endpoint);
+        this.reader = new ImpinjReader(); // Initialize reader
     }
 
     // Method to start the RFID reader and continuously collect tag data
+    @Override
     public void startReading() {
         try {
             // Use the hostname from the XML config
-            String hostname = config.getImpinjHostIP();
-            int port = config.getImpinjHostPort(); // Port (if needed)
+            String hostname = endpoint.getHostIP();
+            int port = endpoint.getHostPort(); // Port (if needed)
 
             // Connect to the reader
-            System.out.println("Connecting to " + hostname);
+            System.out.println("Connecting to " + endpoint);
+            stats.setState(ReaderStats.State.CONNECTING);
             reader.connect(hostname);
 
             // Get and configure reader settings
@@ -45,7 +42,9 @@ public class AntennaReader {
             rcfg.setIncludePeakRssi(reportConfig.get("rssi"));
             rcfg.setIncludePhaseAngle(reportConfig.get("phase"));
             rcfg.setIncludeLastSeenTime(reportConfig.get("timestamp"));
-            rcfg.setIncludeAntennaPortNumber(reportConfig.get("count"));
+            // Spatial mode tells the zones apart by the antenna port
+            ConfigSnapshot.SpatialConfig spatial = snapshot.getSpatial();
+            rcfg.setIncludeAntennaPortNumber(reportConfig.get("count") || spatial.isEnabled());
             rcfg.setMode(ReportMode.Individual);
 
             // Apply report configurations
@@ -66,13 +65,16 @@ public class AntennaReader {
             }
 
 
-            // Enable antenna #n and disable others
+            // Enable antenna #n and disable others, or every port of a zone in spatial mode
             AntennaConfigGroup acfg = settings.getAntennas();
             // Get the antenna index from the configuration
             int configuredAntenna = (Integer) config.getReaderConfig().get("antenna");
             // Iterate over the first 4 antenna configurations
             for (int i = 0; i < 4; i++) {
-                if (config.getProjectName().equalsIgnoreCase(config.getRepoName())) {
+                if (spatial.isEnabled()) {
+                    acfg.getAntennaConfigs().get(i).setEnabled(spatial.zone(i + 1) >= 0); // Ports are numbered from 1
+                }
+                else if (config.getProjectName().equalsIgnoreCase(config.getRepoName())) {
                     acfg.getAntennaConfigs().get(i).setEnabled(i == configuredAntenna);
                 }
                 else {
@@ -86,9 +88,13 @@ public class AntennaReader {
             // Set up a listener to process the tag reports and store them in TagData
             reader.setTagReportListener(new TagReportListenerImplementation());
 
+            // Start processing before reads can arrive
+            startConsumers();
+
             // Start reading tags continuously
-            System.out.println("Starting the reader");
+            System.out.println("Starting the reader " + endpoint.getName());
             reader.start();
+            stats.setState(ReaderStats.State.RUNNING);
             
             // Run the program continuously
             // Times out after 125min
@@ -97,50 +103,69 @@ public class AntennaReader {
             
             
         } catch (OctaneSdkException | InterruptedException e) {
-            System.out.println("Exception: " + e.getMessage());
+            System.out.println("Exception on " + endpoint.getName() + ": " + e.getMessage());
+            stats.fail(e.getMessage());
         } finally {
             stopReader();
         }
     }
     
     // Stop the reader and disconnect
+    @Override
     public void stopReader() {
         try {
-            System.out.println("Stopping the reader");
+            System.out.println("Stopping the reader " + endpoint.getName());
             reader.stop();
             reader.disconnect();
             System.out.println("Disconnected.");
         } catch (OctaneSdkException e) {
             System.out.println("Error while stopping the reader: " + e.getMessage());
+        } finally {
+            if (stats.getState() != ReaderStats.State.FAILED) {
+                stats.setState(ReaderStats.State.STOPPED);
+            }
+            stopConsumers();
         }
     }
-    
+
     // Implementation of the TagReportListener interface
     public class TagReportListenerImplementation implements TagReportListener {
         
         @Override
         public void onTagReported(ImpinjReader reader, TagReport report) {
-            for (Tag tag : report.getTags()) {
+            EpcTable epcTable = snapshot.getEpcTable();
+            List<Tag> tags = report.getTags();
+            for (int i = 0; i < tags.size(); i++) {
+                Tag tag = tags.get(i);
+
+                stats.onReported();
+                int antenna = 0;
+                if (tag.isAntennaPortNumberPresent()) {
+                    antenna = tag.getAntennaPortNumber();
+                    stats.onAntenna(antenna);
+                }
+
+                // Cheap primitive checks first so foreign and weak tags are dropped before any decoding
+                double rssi = tag.getPeakRssiInDbm();
+                if (rssi <= MIN_RSSI) {
+                    stats.onDropped(ReaderStats.Drop.RSSI);
+                    continue;
+                }
+                int epcId = epcTable.find(tag.getEpc().toString());
+                if (epcId < 0) {
+                    stats.onDropped(ReaderStats.Drop.UNKNOWN_EPC);
+                    continue;
+                }
+
                 // Extract data from the tag
-                String epc = tag.getEpc().toString().replaceAll(" ", "");
-                String timestamp = tag.getLastSeenTime().toString();
+                long timestamp = tag.getLastSeenTime().getUtcTimestamp(); // Microseconds since epoch
                 double phase = Math.toDegrees(tag.getPhaseAngleInRadians());
                 double channel = tag.getChannelInMhz();
-                double rssi = tag.getPeakRssiInDbm();
-                
+
                 // Print the tag data to the console
-                // System.out.println("EPC: " + epc + ", Channel: " + channel + " MHz, Phase: " + phase + " at " + rssi + " dB" + " for " + epcSensorMapping.get(epc));
-                // System.out.println(config.getAutoSelect() + " " + config.getSensorDef());
-                if (rssi > -60) {
-                    if (epcSensorMapping.containsKey(epc)) {
-                        if (config.getAutoSelect()) {
-                            config.setSensorDef(epcSensorMapping.get(epc));
-                        }
-                        // Add the tag data to the TagData object
-                        tagData.addTag(epc, timestamp, channel, phase, rssi);
-                    }
-                }
-                
+                // System.out.println("EPC: " + epcTable.name(epcId) + ", Channel: " + channel + " MHz, Phase: " + phase + " at " + rssi + " dB" + " for " + snapshot.getEpcSensor(epcId));
+                // Hand the read to the processing stage, the callback thread must never stall
+                submit(antenna, epcId, timestamp, channel, phase, rssi);
             }
         }
     }
@@ -0,0 +1,132 @@
+package gui;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// The single place phase differences are computed.
+// Every <compute_interval_ms> the scheduler evaluates TagData once, records the selected sensor's value
+// and publishes the result as a PhaseSnapshot to all subscribers (GUI, WebSocket, recorders), each at
+// its own maximum rate. Subscribers run on the compute thread and must return quickly.
+public class ComputeScheduler {
+
+    private final TagData tagData;
+    private final Configs config;
+    private final long intervalMillis;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor;
+
+    private volatile PhaseSnapshot latest = null;
+    private long version = 0;
+    private final Metrics.Histogram tickLatency = new Metrics.Histogram(); // Computing and delivering one snapshot
+
+    public ComputeScheduler(TagData tagData) {
+        this.tagData = tagData;
+        this.config = Configs.getCfgInstance();
+        this.intervalMillis = config.getSnapshot().getComputeIntervalMillis();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "compute");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.get().register(new Metrics.Collector() {
+            @Override
+            public void collect(StringBuilder out) {
+                Metrics.header(out, "sensync_compute_tick_seconds", "summary", "Time to compute and deliver one snapshot");
+                tickLatency.write(out, "sensync_compute_tick_seconds", "");
+            }
+
+            @Override
+            public String summary() {
+                return "compute tick " + tickLatency.summary();
+            }
+        });
+    }
+
+    public void start() {
+        executor.scheduleAtFixedRate(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    // Receive every snapshot
+    public void subscribe(Consumer<PhaseSnapshot> subscriber) {
+        subscribe(subscriber, 0);
+    }
+
+    // Receive at most one snapshot per minIntervalMillis; the ones in between are skipped
+    public void subscribe(Consumer<PhaseSnapshot> subscriber, long minIntervalMillis) {
+        subscriptions.add(new Subscription(subscriber, minIntervalMillis));
+    }
+
+    public void unsubscribe(Consumer<PhaseSnapshot> subscriber) {
+        subscriptions.removeIf(subscription -> subscription.subscriber == subscriber);
+    }
+
+    // Most recent snapshot, null before the first tick
+    public PhaseSnapshot getLatest() {
+        return latest;
+    }
+
+    private void tick() {
+        // An exception escaping would cancel all further ticks
+        long startNanos = System.nanoTime();
+        try {
+            String sensorDef = config.getSensorDef();
+            ConfigSnapshot.SpatialConfig spatial = config.getSnapshot().getSpatial();
+            // Every sensor in multi-sensor mode, otherwise only the selected one. Antenna ports are published on
+            // their own or fused into one value per sensor.
+            Map<String, Double> ports = spatial.isSeparate() ? new LinkedHashMap<>() : null;
+            Map<String, double[]> pairs = new LinkedHashMap<>();
+            Map<String, Double> fused = tagData.calculateAvgPhaseDifferences(config.isMultiSensor(), ports, pairs);
+            double avgPhaseDiff = fused.getOrDefault(sensorDef, -1000.0);
+            Map<String, Double> sensors = ports != null ? ports : fused;
+            if (avgPhaseDiff != -1000) {
+                tagData.recordPhaseDifference(avgPhaseDiff);
+            }
+
+            long now = System.currentTimeMillis();
+            PhaseSnapshot snapshot = new PhaseSnapshot(++version, now, sensorDef, avgPhaseDiff, sensors, pairs);
+            latest = snapshot;
+            for (Subscription subscription : subscriptions) {
+                subscription.deliver(snapshot, now);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            tickLatency.recordSince(startNanos);
+        }
+    }
+
+    private class Subscription {
+        private final Consumer<PhaseSnapshot> subscriber;
+        private final long minIntervalMillis;
+        private long lastDeliveredMillis = Long.MIN_VALUE / 2;
+
+        Subscription(Consumer<PhaseSnapshot> subscriber, long minIntervalMillis) {
+            this.subscriber = subscriber;
+            this.minIntervalMillis = minIntervalMillis;
+        }
+
+        void deliver(PhaseSnapshot snapshot, long now) {
+            // Half a tick of slack, so scheduling jitter doesn't push a delivery a whole tick late
+            if (now - lastDeliveredMillis < minIntervalMillis - intervalMillis / 2) {
+                return;
+            }
+            lastDeliveredMillis = now;
+            try {
+                subscriber.accept(snapshot);
+            } catch (Exception e) {
+                // A failing subscriber must not keep the others from their results
+                e.printStackTrace();
+            }
+        }
+    }
+}
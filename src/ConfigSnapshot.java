@@ -0,0 +1,1012 @@
+package gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.w3c.dom.*;
+
+// Immutable, fully parsed view of params.xml.
+// Configs compiles the XML document into one of these at load time and publishes it through a volatile
+// reference, so reads on the ingest path are plain field loads. Switching the sensor creates a copy.
+public final class ConfigSnapshot {
+
+    private static final double DEFAULT_WINDOW = 1.0;
+    private static final int DEFAULT_Y_RANGE = 120;
+
+    private final Map<String, SensorConfig> sensors;
+    private final List<String> sensorNames;
+    private final Map<String, String> epcSensorMap;
+    private final EpcTable epcTable;     // Every configured EPC with its numeric id
+    private final String[] epcSensors;   // Sensor name of each EPC id
+
+    private final String sensorDef;
+    private final SensorConfig activeSensor;
+
+    private final int readRate;
+    private final int maxTagHistory;
+    private final List<ReaderEndpoint> readers;
+    private final boolean storeData;
+    private final boolean dtw;
+    private final int dtwBand;
+    private final boolean bulkPhaseKernel;
+    private final boolean streaming;
+    private final boolean multiSensor;
+    private final long computeIntervalMillis;
+    private final long streamIntervalMillis;
+    private final int webSocketPort;
+    private final int webSocketQueueCapacity;
+    private final int rawBatchReads;
+    private final long rawMaxDelayMillis;
+    private final int rawQueueCapacity;
+    private final String repoName;
+    private final String projectName;
+    private final Map<String, Object> readerConfig;
+    private final Map<String, Boolean> reportConfig;
+    private final int ingestQueueCapacity;
+    private final IngestQueue.OverflowPolicy ingestOverflowPolicy;
+    private final int ingestConsumers;
+    private final SimulatorConfig simulator;
+    private final CaptureConfig capture;
+    private final ReplayConfig replay;
+    private final HistoryConfig history;
+    private final GuiConfig gui;
+    private final MetricsConfig metrics;
+    private final SpatialConfig spatial;
+
+    // Parse the whole configuration document
+    static ConfigSnapshot parse(Document doc) {
+        return new ConfigSnapshot(doc);
+    }
+
+    private ConfigSnapshot(Document doc) {
+        Map<String, SensorConfig> sensors = new LinkedHashMap<>();
+        Map<String, String> epcSensorMap = new HashMap<>();
+        EpcTable epcTable = new EpcTable();
+        NodeList sensorNodes = doc.getElementsByTagName("sensor");
+        for (int i = 0; i < sensorNodes.getLength(); i++) {
+            if (sensorNodes.item(i).getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            SensorConfig sensor = new SensorConfig((Element) sensorNodes.item(i), epcTable);
+            sensors.put(sensor.getName(), sensor);
+            for (String epc : sensor.getEpcs()) {
+                epcSensorMap.put(epc, sensor.getName());
+            }
+        }
+        this.sensors = Collections.unmodifiableMap(sensors);
+        this.epcSensorMap = Collections.unmodifiableMap(epcSensorMap);
+        this.epcTable = epcTable;
+        this.epcSensors = new String[epcTable.size()];
+        for (SensorConfig sensor : sensors.values()) {
+            for (int id : sensor.epcIds) {
+                epcSensors[id] = sensor.getName();
+            }
+        }
+
+        List<String> sensorNames = new ArrayList<>(sensors.keySet());
+        sensorNames.add("auto");
+        this.sensorNames = Collections.unmodifiableList(sensorNames);
+
+        this.sensorDef = text(doc, "sensor_def", "");
+        this.activeSensor = sensors.getOrDefault(sensorDef, SensorConfig.NONE);
+
+        this.readRate = Integer.parseInt(text(doc, "read_rate", "700"));
+        this.maxTagHistory = Integer.parseInt(text(doc, "max_tag_history", "20000"));
+
+        // Every <impinj> element is a reader; they are numbered in declaration order
+        List<ReaderEndpoint> readers = new ArrayList<>();
+        NodeList readerNodes = doc.getElementsByTagName("impinj");
+        for (int i = 0; i < readerNodes.getLength(); i++) {
+            Element impinj = (Element) readerNodes.item(i);
+            String name = impinj.hasAttribute("name") ? impinj.getAttribute("name") : "reader" + i;
+            readers.add(new ReaderEndpoint(i, name, text(impinj, "host_ip", ""), Integer.parseInt(text(impinj, "host_port", "5084"))));
+        }
+        if (readers.isEmpty()) {
+            readers.add(new ReaderEndpoint(0, "reader0", "", 5084));
+        }
+        this.readers = Collections.unmodifiableList(readers);
+        this.storeData = Boolean.parseBoolean(text(doc, "store_data", "false"));
+        this.dtw = Boolean.parseBoolean(text(doc, "is_dtw", "false"));
+        this.dtwBand = Integer.parseInt(text(doc, "dtw_band", "0"));
+        this.bulkPhaseKernel = !"scalar".equalsIgnoreCase(text(doc, "phase_kernel", "bulk"));
+        this.streaming = Boolean.parseBoolean(text(doc, "is_streaming", "false"));
+        this.multiSensor = Boolean.parseBoolean(text(doc, "multi_sensor", "false"));
+        this.computeIntervalMillis = Long.parseLong(text(doc, "compute_interval_ms", "50"));
+        this.streamIntervalMillis = Long.parseLong(text(doc, "stream_interval_ms", "1000"));
+        Element webSocket = (Element) doc.getElementsByTagName("websocket").item(0);
+        this.webSocketPort = Integer.parseInt(text(webSocket, "port", "8080"));
+        this.webSocketQueueCapacity = Integer.parseInt(text(webSocket, "queue_capacity", "16"));
+        this.rawBatchReads = Integer.parseInt(text(webSocket, "raw_batch_reads", "512"));
+        this.rawMaxDelayMillis = Long.parseLong(text(webSocket, "raw_max_delay_ms", "100"));
+        this.rawQueueCapacity = Integer.parseInt(text(webSocket, "raw_queue_capacity", "64"));
+        this.repoName = text(doc, "repo_name", "SenSync");
+        this.projectName = text(doc, "project", repoName);
+
+        Map<String, Object> readerConfig = new HashMap<>();
+        Element reader = (Element) doc.getElementsByTagName("reader").item(0);
+        readerConfig.put("antenna", Integer.parseInt(text(reader, "antenna", "0")));
+        readerConfig.put("rf_mode", Integer.parseInt(text(reader, "rf_mode", "0")));
+        readerConfig.put("session", Integer.parseInt(text(reader, "session", "0")));
+        readerConfig.put("tagPopulation", Integer.parseInt(text(reader, "tagPopulation", "2")));
+        this.readerConfig = Collections.unmodifiableMap(readerConfig);
+
+        Map<String, Boolean> reportConfig = new HashMap<>();
+        Element report = (Element) doc.getElementsByTagName("report").item(0);
+        for (String field : new String[]{"channel", "rssi", "timestamp", "count", "phase"}) {
+            reportConfig.put(field, Boolean.parseBoolean(text(report, field, "false")));
+        }
+        this.reportConfig = Collections.unmodifiableMap(reportConfig);
+
+        Element ingest = (Element) doc.getElementsByTagName("ingest").item(0);
+        this.ingestQueueCapacity = Integer.parseInt(text(ingest, "queue_capacity", "8192"));
+        this.ingestOverflowPolicy = IngestQueue.OverflowPolicy.parse(text(ingest, "overflow_policy", "drop_oldest"));
+        this.ingestConsumers = Integer.parseInt(text(ingest, "consumers", "1"));
+
+        this.simulator = new SimulatorConfig((Element) doc.getElementsByTagName("simulator").item(0));
+        this.capture = new CaptureConfig((Element) doc.getElementsByTagName("capture").item(0));
+        this.replay = new ReplayConfig((Element) doc.getElementsByTagName("replay").item(0));
+        this.history = new HistoryConfig((Element) doc.getElementsByTagName("history").item(0));
+        this.gui = new GuiConfig((Element) doc.getElementsByTagName("gui").item(0));
+        this.metrics = new MetricsConfig((Element) doc.getElementsByTagName("metrics").item(0));
+        this.spatial = new SpatialConfig((Element) doc.getElementsByTagName("spatial").item(0));
+    }
+
+    // Copy of another snapshot with a different sensor selected
+    private ConfigSnapshot(ConfigSnapshot other, String sensorDef) {
+        this.sensors = other.sensors;
+        this.sensorNames = other.sensorNames;
+        this.epcSensorMap = other.epcSensorMap;
+        this.epcTable = other.epcTable;
+        this.epcSensors = other.epcSensors;
+        this.sensorDef = sensorDef;
+        this.activeSensor = other.sensors.getOrDefault(sensorDef, SensorConfig.NONE);
+        this.readRate = other.readRate;
+        this.maxTagHistory = other.maxTagHistory;
+        this.readers = other.readers;
+        this.storeData = other.storeData;
+        this.dtw = other.dtw;
+        this.dtwBand = other.dtwBand;
+        this.bulkPhaseKernel = other.bulkPhaseKernel;
+        this.streaming = other.streaming;
+        this.multiSensor = other.multiSensor;
+        this.computeIntervalMillis = other.computeIntervalMillis;
+        this.streamIntervalMillis = other.streamIntervalMillis;
+        this.webSocketPort = other.webSocketPort;
+        this.webSocketQueueCapacity = other.webSocketQueueCapacity;
+        this.rawBatchReads = other.rawBatchReads;
+        this.rawMaxDelayMillis = other.rawMaxDelayMillis;
+        this.rawQueueCapacity = other.rawQueueCapacity;
+        this.repoName = other.repoName;
+        this.projectName = other.projectName;
+        this.readerConfig = other.readerConfig;
+        this.reportConfig = other.reportConfig;
+        this.ingestQueueCapacity = other.ingestQueueCapacity;
+        this.ingestOverflowPolicy = other.ingestOverflowPolicy;
+        this.ingestConsumers = other.ingestConsumers;
+        this.simulator = other.simulator;
+        this.capture = other.capture;
+        this.replay = other.replay;
+        this.history = other.history;
+        this.gui = other.gui;
+        this.metrics = other.metrics;
+        this.spatial = other.spatial;
+    }
+
+    public ConfigSnapshot withSensorDef(String sensorDef) {
+        return sensorDef.equals(this.sensorDef) ? this : new ConfigSnapshot(this, sensorDef);
+    }
+
+    // Text content of the first element with the given tag, or the fallback if it is missing
+    private static String text(Document doc, String tag, String fallback) {
+        return text(doc.getDocumentElement(), tag, fallback);
+    }
+
+    private static String text(Element parent, String tag, String fallback) {
+        if (parent == null) {
+            return fallback;
+        }
+        NodeList nodes = parent.getElementsByTagName(tag);
+        return nodes.getLength() > 0 ? nodes.item(0).getTextContent().trim() : fallback;
+    }
+
+    public Map<String, SensorConfig> getSensors() {
+        return sensors;
+    }
+
+    // Sensor with the given name, or an empty sensor without EPCs if it isn't configured
+    public SensorConfig getSensor(String name) {
+        return sensors.getOrDefault(name, SensorConfig.NONE);
+    }
+
+    public List<String> getSensorNames() {
+        return sensorNames;
+    }
+
+    public Map<String, String> getEpcSensorMap() {
+        return epcSensorMap;
+    }
+
+    public EpcTable getEpcTable() {
+        return epcTable;
+    }
+
+    // Name of the sensor an EPC id belongs to
+    public String getEpcSensor(int epcId) {
+        return epcSensors[epcId];
+    }
+
+    public String getSensorDef() {
+        return sensorDef;
+    }
+
+    public SensorConfig getActiveSensor() {
+        return activeSensor;
+    }
+
+    public int getReadRate() {
+        return readRate;
+    }
+
+    public int getMaxTagHistory() {
+        return maxTagHistory;
+    }
+
+    // All configured readers, at least one
+    public List<ReaderEndpoint> getReaders() {
+        return readers;
+    }
+
+    public String getImpinjHostIP() {
+        return readers.get(0).getHostIP();
+    }
+
+    public int getImpinjHostPort() {
+        return readers.get(0).getHostPort();
+    }
+
+    public boolean isStoreData() {
+        return storeData;
+    }
+
+    public boolean isDtw() {
+        return dtw;
+    }
+
+    // Half width of the Sakoe-Chiba band DTW aligns within, in reads; 0 for an unconstrained alignment
+    public int getDtwBand() {
+        return dtwBand;
+    }
+
+    // Whether the matched pass uses PhaseDiffKernel's bulk loop rather than the scalar reference loop
+    public boolean isBulkPhaseKernel() {
+        return bulkPhaseKernel;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    // Whether every configured sensor is captured and computed, not only the selected one
+    public boolean isMultiSensor() {
+        return multiSensor;
+    }
+
+    // How often the ComputeScheduler evaluates the phase differences
+    public long getComputeIntervalMillis() {
+        return computeIntervalMillis;
+    }
+
+    // How often results are sent to WebSocket clients that didn't subscribe to a rate
+    public long getStreamIntervalMillis() {
+        return streamIntervalMillis;
+    }
+
+    public int getWebSocketPort() {
+        return webSocketPort;
+    }
+
+    // Frames queued per WebSocket client before the oldest are dropped
+    public int getWebSocketQueueCapacity() {
+        return webSocketQueueCapacity;
+    }
+
+    // Most reads in one raw stream batch
+    public int getRawBatchReads() {
+        return rawBatchReads;
+    }
+
+    // Longest a read waits in a partial raw stream batch
+    public long getRawMaxDelayMillis() {
+        return rawMaxDelayMillis;
+    }
+
+    // Raw read batches queued per client before the oldest are dropped
+    public int getRawQueueCapacity() {
+        return rawQueueCapacity;
+    }
+
+    public String getRepoName() {
+        return repoName;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    public Map<String, Object> getReaderConfig() {
+        return readerConfig;
+    }
+
+    public Map<String, Boolean> getReportConfig() {
+        return reportConfig;
+    }
+
+    public int getIngestQueueCapacity() {
+        return ingestQueueCapacity;
+    }
+
+    public IngestQueue.OverflowPolicy getIngestOverflowPolicy() {
+        return ingestOverflowPolicy;
+    }
+
+    public int getIngestConsumers() {
+        return ingestConsumers;
+    }
+
+    public SimulatorConfig getSimulator() {
+        return simulator;
+    }
+
+    public CaptureConfig getCapture() {
+        return capture;
+    }
+
+    public ReplayConfig getReplay() {
+        return replay;
+    }
+
+    public HistoryConfig getHistory() {
+        return history;
+    }
+
+    public GuiConfig getGui() {
+        return gui;
+    }
+
+    public MetricsConfig getMetrics() {
+        return metrics;
+    }
+
+    public SpatialConfig getSpatial() {
+        return spatial;
+    }
+
+    // Parsed <history> element, defaults if it is missing
+    public static final class HistoryConfig {
+
+        private final String directory;
+        private final int chunkRecords;
+        private final long flushIntervalMillis;
+        private final long maxFileBytes;
+        private final long rollMillis;
+        private final int maxFiles;
+        private final int memoryPoints;
+        private final String storeDirectory;
+        private final int maxQueryPoints;
+
+        private HistoryConfig(Element history) {
+            this.directory = text(history, "directory", "data/phases");
+            this.chunkRecords = Integer.parseInt(text(history, "chunk_records", "200"));
+            this.flushIntervalMillis = Long.parseLong(text(history, "flush_interval_ms", "10000"));
+            this.maxFileBytes = Long.parseLong(text(history, "max_file_mb", "16")) * 1024 * 1024;
+            this.rollMillis = Long.parseLong(text(history, "roll_minutes", "60")) * 60 * 1000;
+            this.maxFiles = Integer.parseInt(text(history, "max_files", "48"));
+            this.memoryPoints = Integer.parseInt(text(history, "memory_points", "10000"));
+            this.storeDirectory = text(history, "store_directory", "data/phase_store");
+            this.maxQueryPoints = Integer.parseInt(text(history, "max_query_points", "5000"));
+        }
+
+        // Where the history files are written, relative paths are resolved against the repository
+        public String getDirectory() {
+            return directory;
+        }
+
+        // Results collected before a chunk is written
+        public int getChunkRecords() {
+            return chunkRecords;
+        }
+
+        // Longest a result waits before its chunk is written
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public long getMaxFileBytes() {
+            return maxFileBytes;
+        }
+
+        // Age at which a history file is rolled over
+        public long getRollMillis() {
+            return rollMillis;
+        }
+
+        // History files kept, the oldest are deleted
+        public int getMaxFiles() {
+            return maxFiles;
+        }
+
+        // Recent phase differences TagData keeps in memory
+        public int getMemoryPoints() {
+            return memoryPoints;
+        }
+
+        // Where the indexed per-sensor series are kept for range queries
+        public String getStoreDirectory() {
+            return storeDirectory;
+        }
+
+        // Most points a range query may ask for
+        public int getMaxQueryPoints() {
+            return maxQueryPoints;
+        }
+    }
+
+    // Parsed <capture> element, disabled if it is missing
+    public static final class CaptureConfig {
+
+        private final boolean enabled;
+        private final String directory;
+        private final int batchRecords;
+
+        private CaptureConfig(Element capture) {
+            this.enabled = Boolean.parseBoolean(text(capture, "enabled", "false"));
+            this.directory = text(capture, "directory", "data/captures");
+            this.batchRecords = Integer.parseInt(text(capture, "batch_records", "4096"));
+        }
+
+        // Record the raw reads of every reader
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        // Where captures are written, relative paths are resolved against the repository
+        public String getDirectory() {
+            return directory;
+        }
+
+        // Records buffered before each write
+        public int getBatchRecords() {
+            return batchRecords;
+        }
+    }
+
+    // Parsed <metrics> element, disabled if it is missing
+    public static final class MetricsConfig {
+
+        private final boolean enabled;
+        private final String host;
+        private final int port;
+        private final int logIntervalSeconds;
+
+        private MetricsConfig(Element metrics) {
+            this.enabled = Boolean.parseBoolean(text(metrics, "enabled", "false"));
+            this.host = text(metrics, "host", "127.0.0.1");
+            this.port = Integer.parseInt(text(metrics, "port", "9464"));
+            this.logIntervalSeconds = Integer.parseInt(text(metrics, "log_interval_s", "60"));
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        // Address the scrape endpoint listens on, local only by default
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        // Seconds between metric summaries in the log, 0 for none
+        public int getLogIntervalSeconds() {
+            return logIntervalSeconds;
+        }
+    }
+
+    // Parsed <gui> element, the plot's defaults if it is missing
+    public static final class GuiConfig {
+
+        private final int visiblePoints;
+        private final int maxPlotPoints;
+        private final boolean plotAllSensors;
+
+        private GuiConfig(Element gui) {
+            this.visiblePoints = Integer.parseInt(text(gui, "visible_points", "200"));
+            this.maxPlotPoints = Integer.parseInt(text(gui, "max_plot_points", "1000"));
+            this.plotAllSensors = Boolean.parseBoolean(text(gui, "plot_all_sensors", "false"));
+        }
+
+        // Most recent results shown per series
+        public int getVisiblePoints() {
+            return visiblePoints;
+        }
+
+        // Points drawn per series, wider windows are min/max decimated down to this
+        public int getMaxPlotPoints() {
+            return maxPlotPoints;
+        }
+
+        // Plot every sensor at once in multi-sensor mode instead of only the selected one
+        public boolean isPlotAllSensors() {
+            return plotAllSensors;
+        }
+    }
+
+    // Parsed <spatial> element, one sensing zone per reader if it is missing.
+    // When enabled, every listed antenna port of a reader is a zone of its own with separate pipelines.
+    public static final class SpatialConfig {
+
+        private static final int MAX_PORT = ReaderStats.MAX_ANTENNAS;
+
+        private final boolean enabled;
+        private final List<Integer> ports;
+        private final int[] zones; // Zone of each antenna port, -1 for ports that aren't read
+        private final boolean separate;
+
+        private SpatialConfig(Element spatial) {
+            this.enabled = Boolean.parseBoolean(text(spatial, "enabled", "false"));
+            List<Integer> ports = new ArrayList<>();
+            for (String port : text(spatial, "ports", "1,2,3,4").split("\\s*,\\s*")) {
+                int number = Integer.parseInt(port);
+                if (number < 1 || number > MAX_PORT) {
+                    throw new IllegalArgumentException("antenna port " + number + " is not between 1 and " + MAX_PORT);
+                }
+                if (!ports.contains(number)) {
+                    ports.add(number);
+                }
+            }
+            this.ports = Collections.unmodifiableList(ports);
+            this.zones = new int[MAX_PORT + 1];
+            Arrays.fill(zones, enabled ? -1 : 0);
+            if (enabled) {
+                for (int zone = 0; zone < ports.size(); zone++) {
+                    zones[ports.get(zone)] = zone;
+                }
+            }
+            this.separate = "separate".equalsIgnoreCase(text(spatial, "publish", "fused"));
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        // Antenna ports read in spatial mode, numbered from 1 like the reader reports them
+        public List<Integer> getPorts() {
+            return ports;
+        }
+
+        // Zones of each reader: one per port in spatial mode, otherwise a single one
+        public int getZoneCount() {
+            return enabled ? ports.size() : 1;
+        }
+
+        // Zone of a reported antenna port, -1 if the port isn't read. Every port is zone 0 when disabled.
+        public int zone(int port) {
+            return port >= 0 && port <= MAX_PORT ? zones[port] : (enabled ? -1 : 0);
+        }
+
+        // Antenna port of a zone, 0 (not reported) when disabled
+        public int getPort(int zone) {
+            return enabled ? ports.get(zone) : 0;
+        }
+
+        // Publish every sensor at every port ("soil@2") instead of one value per sensor fused over the ports
+        public boolean isSeparate() {
+            return enabled && separate;
+        }
+
+        // Name a sensor's result at one antenna port is published under
+        public static String series(String sensor, int port) {
+            return sensor + "@" + port;
+        }
+
+        // Sensor of a published name, the name itself if it isn't one of a port
+        public static String sensorOf(String series) {
+            int at = series.lastIndexOf('@');
+            return at < 0 ? series : series.substring(0, at);
+        }
+    }
+
+    // Parsed <replay> element, nothing is replayed if it is missing
+    public static final class ReplayConfig {
+
+        private final List<String> files;
+        private final boolean realtime;
+        private final double speed;
+
+        private ReplayConfig(Element replay) {
+            String files = text(replay, "files", "");
+            this.files = files.isEmpty() ? Collections.emptyList() : List.of(files.split("\\s*,\\s*"));
+            this.realtime = Boolean.parseBoolean(text(replay, "realtime", "true"));
+            this.speed = Double.parseDouble(text(replay, "speed", "1.0"));
+        }
+
+        // Captures replayed instead of reading, the n-th one into the n-th reader's shard
+        public List<String> getFiles() {
+            return files;
+        }
+
+        // Pace reads by their recorded timestamps rather than replaying as fast as possible
+        public boolean isRealtime() {
+            return realtime;
+        }
+
+        // Playback speed of a real-time replay
+        public double getSpeed() {
+            return speed;
+        }
+    }
+
+    // Parsed <simulator> element, disabled if it is missing
+    public static final class SimulatorConfig {
+
+        private final boolean enabled;
+        private final double rate;
+        private final List<String> sensors;
+        private final int channels;
+        private final int dwellMillis;
+        private final double phaseNoise;
+        private final double phaseDrift;
+        private final double flipProbability;
+        private final double rssi;
+        private final int foreignTags;
+        private final long seed;
+
+        private SimulatorConfig(Element simulator) {
+            this.enabled = Boolean.parseBoolean(text(simulator, "enabled", "false"));
+            this.rate = Double.parseDouble(text(simulator, "rate", "700"));
+            String sensors = text(simulator, "sensors", "");
+            this.sensors = sensors.isEmpty() ? Collections.emptyList() : List.of(sensors.split("\\s*,\\s*"));
+            this.channels = Integer.parseInt(text(simulator, "channels", "50"));
+            this.dwellMillis = Integer.parseInt(text(simulator, "dwell_ms", "200"));
+            this.phaseNoise = Double.parseDouble(text(simulator, "phase_noise", "2.0"));
+            this.phaseDrift = Double.parseDouble(text(simulator, "phase_drift", "0.5"));
+            this.flipProbability = Double.parseDouble(text(simulator, "flip_probability", "0.0"));
+            this.rssi = Double.parseDouble(text(simulator, "rssi", "-45"));
+            this.foreignTags = Integer.parseInt(text(simulator, "foreign_tags", "0"));
+            this.seed = Long.parseLong(text(simulator, "seed", "42"));
+        }
+
+        // Replace the physical readers with simulated ones
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        // Reads per second per simulated reader, 0 or less for as fast as possible
+        public double getRate() {
+            return rate;
+        }
+
+        // Sensors whose EPCs are simulated, empty for all of them
+        public List<String> getSensors() {
+            return sensors;
+        }
+
+        public int getChannels() {
+            return channels;
+        }
+
+        // Time spent on a channel before hopping
+        public int getDwellMillis() {
+            return dwellMillis;
+        }
+
+        // Standard deviation of the per-read phase noise in degrees
+        public double getPhaseNoise() {
+            return phaseNoise;
+        }
+
+        // Common phase drift in degrees per second
+        public double getPhaseDrift() {
+            return phaseDrift;
+        }
+
+        // Chance of a read reporting the phase off by 180 degrees
+        public double getFlipProbability() {
+            return flipProbability;
+        }
+
+        // Mean peak RSSI in dBm
+        public double getRssi() {
+            return rssi;
+        }
+
+        // Unknown EPCs mixed into the stream to exercise the filters
+        public int getForeignTags() {
+            return foreignTags;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+    }
+
+    // Parsed <impinj> element
+    public static final class ReaderEndpoint {
+
+        private final int index;
+        private final String name;
+        private final String hostIP;
+        private final int hostPort;
+
+        private ReaderEndpoint(int index, String name, String hostIP, int hostPort) {
+            this.index = index;
+            this.name = name;
+            this.hostIP = hostIP;
+            this.hostPort = hostPort;
+        }
+
+        // Position in params.xml, also the TagData shard the reader feeds
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHostIP() {
+            return hostIP;
+        }
+
+        public int getHostPort() {
+            return hostPort;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + hostIP + ")";
+        }
+    }
+
+    // Parsed <filter> element of a <sensor>, no filtering if it is missing.
+    // The filter runs per EPC and channel over the last <length> phases of each.
+    public static final class FilterConfig {
+
+        public enum Type {
+            NONE,   // Phases are averaged as read
+            MEDIAN, // Sliding median
+            HAMPEL, // Phases further than <threshold> scaled MADs from the sliding median are replaced by it
+            EWMA    // Exponentially weighted moving average with weight <alpha> on the newest phase
+        }
+
+        static final FilterConfig NONE = new FilterConfig();
+
+        private final Type type;
+        private final int length;
+        private final double threshold;
+        private final double alpha;
+
+        private FilterConfig() {
+            this.type = Type.NONE;
+            this.length = 1;
+            this.threshold = 3;
+            this.alpha = 1;
+        }
+
+        private FilterConfig(Element filter, String sensor) {
+            String type = text(filter, "type", "none");
+            try {
+                this.type = Type.valueOf(type.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("unknown filter " + type + " of sensor " + sensor);
+            }
+            this.length = Integer.parseInt(text(filter, "length", "7"));
+            this.threshold = Double.parseDouble(text(filter, "threshold", "3"));
+            this.alpha = Double.parseDouble(text(filter, "alpha", "0.3"));
+            if (length < 1) {
+                throw new IllegalArgumentException("filter length of sensor " + sensor + " must be at least 1");
+            }
+            if (!(alpha > 0 && alpha <= 1)) {
+                throw new IllegalArgumentException("filter alpha of sensor " + sensor + " must be in (0, 1]");
+            }
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public boolean isEnabled() {
+            return type != Type.NONE;
+        }
+
+        // Phases per EPC and channel the median and Hampel filters look at
+        public int getLength() {
+            return length;
+        }
+
+        // Hampel threshold in scaled median absolute deviations
+        public double getThreshold() {
+            return threshold;
+        }
+
+        // EWMA weight of the newest phase
+        public double getAlpha() {
+            return alpha;
+        }
+    }
+
+    // Parsed <sensor> element
+    public static final class SensorConfig {
+
+        static final SensorConfig NONE = new SensorConfig();
+
+        private final String name;
+        private final List<String> epcs;
+        private final Set<String> epcSet;
+        private final int[] epcIds;
+        private final int[] pairs; // EPC positions of the measured pairs, two per pair
+        private final FilterConfig filter;
+        private final double window;
+        private final int yRange;
+        private final Map<String, Integer> classification;
+        private final Map<String, Object> asMap;
+
+        private SensorConfig() {
+            this.name = "";
+            this.epcs = Collections.emptyList();
+            this.epcSet = Collections.emptySet();
+            this.epcIds = new int[0];
+            this.pairs = new int[0];
+            this.filter = FilterConfig.NONE;
+            this.window = DEFAULT_WINDOW;
+            this.yRange = DEFAULT_Y_RANGE;
+            this.classification = Collections.emptyMap();
+            this.asMap = Collections.emptyMap();
+        }
+
+        private SensorConfig(Element sensor, EpcTable epcTable) {
+            this.name = sensor.getAttribute("name");
+
+            // Extract EPCs
+            List<String> epcs = new ArrayList<>();
+            NodeList epcNodes = sensor.getElementsByTagName("epc");
+            for (int j = 0; j < epcNodes.getLength(); j++) {
+                epcs.add(epcNodes.item(j).getTextContent().trim());
+            }
+            this.epcs = Collections.unmodifiableList(epcs);
+            this.epcSet = Collections.unmodifiableSet(new LinkedHashSet<>(epcs));
+            this.epcIds = new int[epcs.size()];
+            for (int j = 0; j < epcIds.length; j++) {
+                epcIds[j] = epcTable.intern(epcs.get(j));
+            }
+            this.pairs = parsePairs(text(sensor, "pairs", ""), epcs.size());
+            Element filter = (Element) sensor.getElementsByTagName("filter").item(0);
+            this.filter = filter != null ? new FilterConfig(filter, name) : FilterConfig.NONE;
+
+            // Extract classification
+            Map<String, Integer> classification = new HashMap<>();
+            NodeList classificationNodes = sensor.getElementsByTagName("classification");
+            if (classificationNodes.getLength() > 0) {
+                NodeList classNodes = classificationNodes.item(0).getChildNodes();
+                for (int j = 0; j < classNodes.getLength(); j++) {
+                    if (classNodes.item(j).getNodeType() == Node.ELEMENT_NODE) {
+                        Element classElem = (Element) classNodes.item(j);
+                        classification.put(classElem.getTagName(), Integer.parseInt(classElem.getTextContent().trim()));
+                    }
+                }
+            }
+            this.classification = Collections.unmodifiableMap(classification);
+
+            // Extract window and y_range
+            this.window = Double.parseDouble(text(sensor, "window", String.valueOf(DEFAULT_WINDOW)));
+            this.yRange = Integer.parseInt(text(sensor, "y_range", String.valueOf(DEFAULT_Y_RANGE)));
+
+            Map<String, Object> asMap = new HashMap<>();
+            asMap.put("epcs", this.epcs);
+            asMap.put("classification", this.classification);
+            asMap.put("window", this.window);
+            asMap.put("y_range", this.yRange);
+            this.asMap = Collections.unmodifiableMap(asMap);
+        }
+
+        // Pairs as "0-1, 2-3" by position in <epcs>, "all" for every pair, or empty for the first two EPCs
+        private int[] parsePairs(String pairs, int epcCount) {
+            List<Integer> positions = new ArrayList<>();
+            if (pairs.equalsIgnoreCase("all")) {
+                for (int i = 0; i < epcCount; i++) {
+                    for (int j = i + 1; j < epcCount; j++) {
+                        positions.add(i);
+                        positions.add(j);
+                    }
+                }
+            } else if (!pairs.isEmpty()) {
+                for (String pair : pairs.split("\\s*,\\s*")) {
+                    String[] members = pair.split("\\s*-\\s*");
+                    int first = members.length == 2 ? Integer.parseInt(members[0]) : -1;
+                    int second = members.length == 2 ? Integer.parseInt(members[1]) : -1;
+                    if (first < 0 || second < 0 || first == second || Math.max(first, second) >= epcCount) {
+                        throw new IllegalArgumentException("invalid EPC pair " + pair + " of sensor " + name);
+                    }
+                    positions.add(first);
+                    positions.add(second);
+                }
+            } else if (epcCount >= 2) {
+                positions.add(0);
+                positions.add(1);
+            }
+            return positions.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // EPC pairs whose phase difference is measured, at least one if the sensor has two EPCs
+        public int getPairCount() {
+            return pairs.length / 2;
+        }
+
+        // Position in <epcs> of the first (member 0) or second (member 1) EPC of a pair
+        public int getPairPosition(int pair, int member) {
+            return pairs[2 * pair + member];
+        }
+
+        // "0-1" for the pair of the first two EPCs
+        public String getPairName(int pair) {
+            return pairs[2 * pair] + "-" + pairs[2 * pair + 1];
+        }
+
+        // Filter applied to the sensor's phases before they are averaged
+        public FilterConfig getFilter() {
+            return filter;
+        }
+
+        // EPCs in the order they are declared in params.xml
+        public List<String> getEpcs() {
+            return epcs;
+        }
+
+        public Set<String> getEpcSet() {
+            return epcSet;
+        }
+
+        // Id of the i-th declared EPC in the snapshot's EPC table
+        public int getEpcId(int i) {
+            return epcIds[i];
+        }
+
+        public boolean containsEpcId(int epcId) {
+            for (int id : epcIds) {
+                if (id == epcId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public double getWindow() {
+            return window;
+        }
+
+        public int getYRange() {
+            return yRange;
+        }
+
+        public Map<String, Integer> getClassification() {
+            return classification;
+        }
+
+        // Legacy map form with the keys "epcs", "classification", "window" and "y_range"
+        public Map<String, Object> asMap() {
+            return asMap;
+        }
+    }
+}
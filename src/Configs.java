@@ -3,8 +3,6 @@ package gui;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.xml.parsers.DocumentBuilder;
@@ -14,17 +12,19 @@ import org.w3c.dom.*;
 public class Configs {
     private static Configs cfgInstance;
 
-    private Document configDocument;
+    // Parsed params.xml, replaced as a whole (copy-on-switch) whenever the selected sensor changes
+    private volatile ConfigSnapshot snapshot;
 
-    private Boolean autoSelect = true;
+    private volatile Boolean autoSelect = true;
 
     private Configs() {
         try {
             File xmlFile = new File("lib/params.xml");
             DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
             DocumentBuilder builder = factory.newDocumentBuilder();
-            configDocument = builder.parse(xmlFile);
+            Document configDocument = builder.parse(xmlFile);
             configDocument.getDocumentElement().normalize();
+            snapshot = ConfigSnapshot.parse(configDocument);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -40,164 +40,88 @@ public class Configs {
         }
         return cfgInstance;
     }
+
+    // Current immutable configuration; callers that need several values should read it once
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
+    }
     
     // Method to get a map of EPC values to sensor names
     public Map<String, String> getEpcSensorMap() {
-        Map<String, String> epcSensorMap = new HashMap<>();
-
-        try {
-            // Get all <sensor> elements from the 'params.xml' document
-            NodeList sensorList = configDocument.getElementsByTagName("sensor");
-            
-            // Loop through each <sensor> element
-            for (int i = 0; i < sensorList.getLength(); i++) {
-                Node sensorNode = sensorList.item(i);
-                
-                if (sensorNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element sensorElement = (Element) sensorNode;
-                    
-                    // Get the 'name' attribute of the <sensor>
-                    String sensorName = sensorElement.getAttribute("name");
-                    
-                    // Get all <epc> elements under this <sensor>
-                    NodeList epcList = sensorElement.getElementsByTagName("epc");
-                    
-                    // Loop through each <epc> element and add it to the map
-                    for (int j = 0; j < epcList.getLength(); j++) {
-                        String epcValue = epcList.item(j).getTextContent().trim();
-                        epcSensorMap.put(epcValue, sensorName);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        
-        return epcSensorMap;
+        return snapshot.getEpcSensorMap();
     }
     
     public Map<String, Object> getSensorConfig(String sensorName) {
-        Map<String, Object> sensorConfig = new HashMap<>();
-        NodeList sensorNodes = configDocument.getElementsByTagName("sensor");
-        
-        for (int i = 0; i < sensorNodes.getLength(); i++) {
-            Element sensor = (Element) sensorNodes.item(i);
-            if (sensor.getAttribute("name").equals(sensorName)) {
-                // Extract EPCs
-                List<String> epcs = new ArrayList<>();
-                NodeList epcNodes = sensor.getElementsByTagName("epc");
-                for (int j = 0; j < epcNodes.getLength(); j++) {
-                    epcs.add(epcNodes.item(j).getTextContent());
-                }
-                sensorConfig.put("epcs", epcs);
+        return snapshot.getSensor(sensorName).asMap();
+    }
 
-                // Extract classification
-                Map<String, Integer> classification = new HashMap<>();
-                NodeList classNodes = sensor.getElementsByTagName("classification").item(0).getChildNodes();
-                for (int j = 0; j < classNodes.getLength(); j++) {
-                    if (classNodes.item(j).getNodeType() == Node.ELEMENT_NODE) {
-                        Element classElem = (Element) classNodes.item(j);
-                        classification.put(classElem.getTagName(), Integer.parseInt(classElem.getTextContent()));
-                    }
-                }
-                sensorConfig.put("classification", classification);
-                
-                // Extract window and y_range
-                sensorConfig.put("window", Double.parseDouble(sensor.getElementsByTagName("window").item(0).getTextContent()));
-                sensorConfig.put("y_range", Integer.parseInt(sensor.getElementsByTagName("y_range").item(0).getTextContent()));
-                
-                break;
-            }
-        }
-        return sensorConfig;
+    public ConfigSnapshot.SensorConfig getActiveSensor() {
+        return snapshot.getActiveSensor();
     }
     
     public void setSensorDef(String sensor) {
-        configDocument.getElementsByTagName("sensor_def").item(0).setTextContent(sensor);
+        if (sensor.equals(snapshot.getSensorDef())) {
+            return; // Auto-select re-applies the same sensor on every read
+        }
+        synchronized (this) {
+            snapshot = snapshot.withSensorDef(sensor);
+        }
     }
     
     public String getSensorDef() {
-        return configDocument.getElementsByTagName("sensor_def").item(0).getTextContent();
+        return snapshot.getSensorDef();
     }
 
     public List<String> getAllSensorNames() {
-        List<String> sensorNames = new ArrayList<>();
-        
-        try {
-            // Get all <sensor> elements from the 'params.xml' document
-            NodeList sensorList = configDocument.getElementsByTagName("sensor");
-            
-            // Loop through each <sensor> element
-            for (int i = 0; i < sensorList.getLength(); i++) {
-                Node sensorNode = sensorList.item(i);
-                
-                if (sensorNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element sensorElement = (Element) sensorNode;
-                    
-                    // Get the 'name' attribute of the <sensor> and add it to the list
-                    String sensorName = sensorElement.getAttribute("name");
-                    sensorNames.add(sensorName);
-                }
-            }
-            sensorNames.add("auto");
-        } catch (Exception e) {
-            return new ArrayList<>();
-        }
-        
-        return sensorNames;
+        return snapshot.getSensorNames();
     }
     
     public int getReadRate() {
-        return Integer.parseInt(configDocument.getElementsByTagName("read_rate").item(0).getTextContent());
+        return snapshot.getReadRate();
     }
     
     public int getMaxTagHistory() {
-        return Integer.parseInt(configDocument.getElementsByTagName("max_tag_history").item(0).getTextContent());
+        return snapshot.getMaxTagHistory();
     }
     
     public String getImpinjHostIP() {
-        return configDocument.getElementsByTagName("host_ip").item(0).getTextContent();
+        return snapshot.getImpinjHostIP();
     }
     
     public int getImpinjHostPort() {
-        return Integer.parseInt(configDocument.getElementsByTagName("host_port").item(0).getTextContent());
+        return snapshot.getImpinjHostPort();
     }
     
     public boolean isStoreData() {
-        return Boolean.parseBoolean(configDocument.getElementsByTagName("store_data").item(0).getTextContent());
+        return snapshot.isStoreData();
     }
     
     public boolean isDtw() {
-        return Boolean.parseBoolean(configDocument.getElementsByTagName("is_dtw").item(0).getTextContent());
+        return snapshot.isDtw();
+    }
+
+    public boolean isStreaming() {
+        return snapshot.isStreaming();
+    }
+    
+    public boolean isMultiSensor() {
+        return snapshot.isMultiSensor();
     }
     
     public String getRepoName() {
-        return configDocument.getElementsByTagName("repo_name").item(0).getTextContent();
+        return snapshot.getRepoName();
     }
     
     public String getProjectName() {
-        return configDocument.getElementsByTagName("project").item(0).getTextContent();
+        return snapshot.getProjectName();
     }
     
     public Map<String, Object> getReaderConfig() {
-        Map<String, Object> readerConfig = new HashMap<>();
-        Element reader = (Element) configDocument.getElementsByTagName("reader").item(0);
-        readerConfig.put("antenna", Integer.parseInt(reader.getElementsByTagName("antenna").item(0).getTextContent()));
-        readerConfig.put("rf_mode", Integer.parseInt(reader.getElementsByTagName("rf_mode").item(0).getTextContent()));
-        readerConfig.put("session", Integer.parseInt(reader.getElementsByTagName("session").item(0).getTextContent()));
-        readerConfig.put("tagPopulation", Integer.parseInt(reader.getElementsByTagName("tagPopulation").item(0).getTextContent()));
-        return readerConfig;
+        return snapshot.getReaderConfig();
     }
     
     public Map<String, Boolean> getReportConfig() {
-        Map<String, Boolean> reportConfig = new HashMap<>();
-        Element report = (Element) configDocument.getElementsByTagName("report").item(0);
-        reportConfig.put("channel", Boolean.parseBoolean(report.getElementsByTagName("channel").item(0).getTextContent()));
-        reportConfig.put("rssi", Boolean.parseBoolean(report.getElementsByTagName("rssi").item(0).getTextContent()));
-        reportConfig.put("timestamp", Boolean.parseBoolean(report.getElementsByTagName("timestamp").item(0).getTextContent()));
-        reportConfig.put("count", Boolean.parseBoolean(report.getElementsByTagName("count").item(0).getTextContent()));
-        reportConfig.put("phase", Boolean.parseBoolean(report.getElementsByTagName("phase").item(0).getTextContent()));
-        return reportConfig;
+        return snapshot.getReportConfig();
     }
     
     public Boolean getAutoSelect() {
@@ -2,58 +2,126 @@ package gui;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 
 import org.java_websocket.server.WebSocketServer;
 import org.java_websocket.WebSocket;
 import org.java_websocket.handshake.ClientHandshake;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 
 public class DataStreamer extends WebSocketServer {
     private Configs config;
     private TagData tagData;
 
-    private static final int PORT = 8080; // Port for the WebSocket
+    // Binary result frame type and the bits of its field mask, see README
+    private static final byte RESULT_FRAME = 1;
+    private static final int FIELD_VERSION = 1;
+    private static final int FIELD_TIMESTAMP = 2;
+    private static final int FIELD_SELECTED = 4;
+    private static final int FIELD_SENSORS = 8;
+    private static final int MAX_SERIES = 0xFFFF; // Series indices and counts are unsigned shorts
+
     private static final CopyOnWriteArraySet<WebSocket> clients = new CopyOnWriteArraySet<>();
 
+    // Results are encoded and queued on their own thread, the compute thread only hands them over.
+    // Only the newest result waits; one arriving while the previous is still pending replaces it.
+    private final ExecutorService publisher;
+    private final AtomicReference<PhaseSnapshot> nextSnapshot = new AtomicReference<>();
+
+    // Micro-batches of the accepted reads for clients subscribed to "raw"; idle while there are none
+    private final RawReadStream rawStream;
+
+    // Range queries over the stored results run on their own thread so they never hold up other messages
+    private final ExecutorService queries;
+    private volatile PhaseStore store = null;
+
+    // Names of the results per sensor and antenna port when spatial mode publishes the ports separately
+    private final List<String> portNames = new ArrayList<>();
+
     public DataStreamer(TagData tagData) {
-        super(new InetSocketAddress(PORT));
+        super(new InetSocketAddress(Configs.getCfgInstance().getSnapshot().getWebSocketPort()));
         this.tagData = tagData;
         this.config = Configs.getCfgInstance();
+        setReuseAddr(true); // Allow restarting right away
+        this.publisher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stream-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.queries = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ConfigSnapshot snapshot = config.getSnapshot();
+        this.rawStream = new RawReadStream(snapshot.getRawBatchReads(), snapshot.getRawMaxDelayMillis(), this::onReadBatch);
+        tagData.addReadListener(rawStream);
+        Metrics.get().register(new ClientMetrics());
+        if (snapshot.getSpatial().isSeparate()) {
+            for (String sensor : snapshot.getSensors().keySet()) {
+                for (int port : snapshot.getSpatial().getPorts()) {
+                    portNames.add(ConfigSnapshot.SpatialConfig.series(sensor, port));
+                }
+            }
+        }
     }
 
     @Override
     public void onStart() {
-        System.out.println("WebSocket server started on port: " + PORT);
+        System.out.println("WebSocket server started on port: " + getPort());
     }
 
     @Override
     public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        ConfigSnapshot snapshot = config.getSnapshot();
+        conn.setAttachment(new StreamClient(conn, StreamClient.Subscription.defaults(snapshot.getStreamIntervalMillis()),
+                snapshot.getWebSocketQueueCapacity(), snapshot.getRawQueueCapacity()));
         clients.add(conn);
         System.out.println("New connection: " + conn.getRemoteSocketAddress());
         
         // Create a JSON object to send sensor names
         JsonObject sensorNames = new JsonObject();
         sensorNames.addProperty("sensorNames", config.getAllSensorNames().toString());
+        if (!portNames.isEmpty()) {
+            sensorNames.addProperty("portNames", portNames.toString());
+        }
+        sensorNames.addProperty("seriesNames", seriesNames().toString());
         conn.send(sensorNames.toString());
     }
 
     @Override
     public void onClose(WebSocket conn, int code, String reason, boolean remote) {
         clients.remove(conn);
-        System.out.println("Connection closed: " + conn.getRemoteSocketAddress());
+        updateRawStream();
+        StreamClient client = conn.getAttachment();
+        System.out.println("Connection closed: " + conn.getRemoteSocketAddress()
+                + (client != null ? " (" + client.getSent() + " sent, " + client.getDropped() + " dropped, "
+                + client.getRawDropped() + " read batches dropped)" : ""));
     }
 
     @Override
     public void onMessage(WebSocket conn, String message) {
         System.out.println("Received message: " + message);
 
-        if (message.toLowerCase().equals(config.getSensorDef())) {
+        // JSON messages change the client's own subscription or query the history, anything else selects the sensor
+        if (message.trim().startsWith("{")) {
+            request(conn, message);
+        }
+        else if (message.toLowerCase().equals(config.getSensorDef())) {
             // Pass
         }
         else if (message.toLowerCase().equals("auto")) {
@@ -68,6 +136,110 @@ public class DataStreamer extends WebSocketServer {
 
     }
 
+    // Store answering {"query": {...}} requests; without one, queries are answered with an error
+    public void setPhaseStore(PhaseStore store) {
+        this.store = store;
+    }
+
+    private void request(WebSocket conn, String message) {
+        try {
+            JsonObject request = JsonParser.parseString(message).getAsJsonObject();
+            if (request.has("subscribe")) {
+                subscribe(conn, request.get("subscribe").getAsJsonObject());
+            }
+            if (request.has("query")) {
+                JsonObject query = request.get("query").getAsJsonObject();
+                queries.execute(() -> query(conn, query));
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Invalid request from " + conn.getRemoteSocketAddress() + ": " + e.getMessage());
+        }
+    }
+
+    // Apply a {"subscribe": {...}} request to the client's subscription
+    private void subscribe(WebSocket conn, JsonObject subscribe) {
+        StreamClient client = conn.getAttachment();
+        boolean wasRaw = client.getSubscription().wantsRaw();
+        client.setSubscription(client.getSubscription().with(subscribe));
+        System.out.println("Subscription of " + conn.getRemoteSocketAddress() + ": " + client.getSubscription());
+        if (client.getSubscription().wantsRaw() && !wasRaw) {
+            sendEpcTable(conn);
+        }
+        updateRawStream();
+    }
+
+    // Answer a {"query": {...}} request with the sensor's stored values over the range, downsampled
+    private void query(WebSocket conn, JsonObject query) {
+        JsonObject answer = new JsonObject();
+        if (query.has("id")) {
+            answer.add("id", query.get("id"));
+        }
+        try {
+            long now = System.currentTimeMillis();
+            String sensor = query.has("sensor") ? query.get("sensor").getAsString() : config.getSensorDef();
+            long from = query.has("from") ? query.get("from").getAsLong() : -3600_000;
+            long to = query.has("to") ? query.get("to").getAsLong() : now;
+            from = from <= 0 ? now + from : from; // Zero or negative times are relative to now
+            to = to <= 0 ? now + to : to;
+            int maxPoints = config.getSnapshot().getHistory().getMaxQueryPoints();
+            int points = Math.min(query.has("points") ? query.get("points").getAsInt() : 1000, maxPoints);
+            PhaseStore.Mode mode = PhaseStore.Mode.parse(query.has("mode") ? query.get("mode").getAsString() : "minmax");
+
+            answer.addProperty("sensor", sensor);
+            answer.addProperty("from", from);
+            answer.addProperty("to", to);
+            answer.addProperty("mode", mode.name().toLowerCase());
+            if (store == null) {
+                answer.addProperty("error", "no history is stored");
+            } else if (!config.getSnapshot().getSensors().containsKey(ConfigSnapshot.SpatialConfig.sensorOf(sensor))) {
+                answer.addProperty("error", "unknown sensor " + sensor);
+            } else {
+                long started = System.nanoTime();
+                PhaseStore.Result result = store.query(sensor, from, to, points, mode);
+                JsonArray values = new JsonArray();
+                for (int i = 0; i < result.size(); i++) {
+                    JsonArray point = new JsonArray();
+                    point.add(result.getTime(i));
+                    point.add(result.getValue(i));
+                    values.add(point);
+                }
+                answer.addProperty("matched", result.getMatched());
+                answer.add("points", values);
+                System.out.println(String.format("Query of %s: %d of %d points in %.1f ms", sensor, result.size(),
+                        result.getMatched(), (System.nanoTime() - started) / 1e6));
+            }
+        } catch (IOException | RuntimeException e) {
+            answer.addProperty("error", String.valueOf(e.getMessage()));
+        }
+        JsonObject message = new JsonObject();
+        message.add("query", answer);
+        if (conn.isOpen()) {
+            conn.send(message.toString());
+        }
+    }
+
+    // Raw reads carry EPC ids; tell the client which EPC each id stands for
+    private void sendEpcTable(WebSocket conn) {
+        EpcTable epcTable = config.getSnapshot().getEpcTable();
+        JsonArray epcs = new JsonArray();
+        for (int id = 0; id < epcTable.size(); id++) {
+            epcs.add(epcTable.name(id));
+        }
+        JsonObject message = new JsonObject();
+        message.add("epcs", epcs);
+        conn.send(message.toString());
+    }
+
+    // Batch reads only while some client wants them
+    private void updateRawStream() {
+        boolean anyRaw = false;
+        for (WebSocket conn : clients) {
+            StreamClient client = conn.getAttachment();
+            anyRaw |= client.getSubscription().wantsRaw();
+        }
+        rawStream.setEnabled(anyRaw);
+    }
+
     @Override
     public void onError(WebSocket conn, Exception ex) {
         ex.printStackTrace();
@@ -79,60 +251,250 @@ public class DataStreamer extends WebSocketServer {
         }
     }
 
-    public static void main(String[] args) throws IOException {
-        TagData tagData = new TagData();
-        Configs config = Configs.getCfgInstance();
-        AntennaReader antennaReader = new AntennaReader(tagData);
-        new Thread(antennaReader::startReading).start();
+    // Scheduler subscriber: hand the result to the publishing thread without waiting
+    public void onSnapshot(PhaseSnapshot snapshot) {
+        if (nextSnapshot.getAndSet(snapshot) == null) {
+            publisher.execute(() -> publish(nextSnapshot.getAndSet(null)));
+        }
+    }
 
-        DataStreamer server = new DataStreamer(tagData);
-        server.start();
+    // Queue the result for every client it is due for and send what the clients can take
+    private void publish(PhaseSnapshot snapshot) {
+        long now = System.currentTimeMillis();
+        long slackMillis = config.getSnapshot().getComputeIntervalMillis() / 2;
+        for (WebSocket conn : clients) {
+            StreamClient client = conn.getAttachment();
+            StreamClient.Subscription subscription = client.getSubscription();
+            if (subscription.wantsResults() && hasValue(snapshot, subscription) && client.isResultDue(now, slackMillis)) {
+                if (subscription.getFormat() == StreamClient.Format.BINARY) {
+                    client.offer(encodeBinary(snapshot, subscription));
+                } else {
+                    client.offer(encodeJson(snapshot, subscription));
+                }
+            }
+            client.flush();
+        }
+    }
 
-        new Thread(() -> {
-            try {
-                while (true) {
-                    long currentTimeMillis = System.currentTimeMillis();
-                    SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss yy/MM/dd");
-                    String formattedDate = sdf.format(new Date(currentTimeMillis));
-
-                    double avgPhaseDiff = tagData.calculateAvgPhaseDifference();
-                    JsonObject data = new JsonObject();
-
-                    if ("soil".equals(config.getSensorDef())) {
-                        if (avgPhaseDiff < 25) {
-                            data.addProperty("avgPhaseDiff", String.format("100") + "%");
-                        }
-                        else if (avgPhaseDiff < 65) {
-                            data.addProperty("avgPhaseDiff", String.format("%.2f", 100 - ((100.0 / 40.0) * (avgPhaseDiff - 25))) + "%");
-                        }
-                        else {
-                            data.addProperty("avgPhaseDiff", String.format("0") + "%");
-                        }
-                    }
-                    else if ("sugar".equals(config.getSensorDef())) {
-                        
-                    }
-                    else if ("salt".equals(config.getSensorDef())) {
+    // RawReadStream sink: queue a sealed batch for every raw subscriber, on the publishing thread
+    private void onReadBatch(ByteBuffer batch) {
+        publisher.execute(() -> {
+            for (WebSocket conn : clients) {
+                StreamClient client = conn.getAttachment();
+                if (client.getSubscription().wantsRaw()) {
+                    client.offerRaw(batch.duplicate()); // Each send consumes its own view of the batch
+                    client.flush();
+                }
+            }
+        });
+    }
 
+    // Whether the snapshot carries anything the client subscribed to
+    private boolean hasValue(PhaseSnapshot snapshot, StreamClient.Subscription subscription) {
+        if (snapshot.hasValue() && subscription.wantsSensor(snapshot.getSensorDef())) {
+            return true;
+        }
+        for (Map.Entry<String, Double> sensor : snapshot.getSensors().entrySet()) {
+            if (sensor.getValue() >= 0 && subscription.wantsSensor(sensor.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // JSON result with the fields the client subscribed to
+    private String encodeJson(PhaseSnapshot snapshot, StreamClient.Subscription subscription) {
+        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss yy/MM/dd");
+        String formattedDate = sdf.format(new Date(snapshot.getComputedAtMillis()));
+
+        double avgPhaseDiff = snapshot.getAvgPhaseDiff();
+        String sensorDef = snapshot.getSensorDef();
+        JsonObject data = new JsonObject();
+
+        if (!snapshot.hasValue() || !subscription.wantsField("avgPhaseDiff")) {
+            // Not part of the subscription
+        }
+        else if ("soil".equals(sensorDef)) {
+            if (avgPhaseDiff < 25) {
+                data.addProperty("avgPhaseDiff", String.format("100") + "%");
+            }
+            else if (avgPhaseDiff < 65) {
+                data.addProperty("avgPhaseDiff", String.format("%.2f", 100 - ((100.0 / 40.0) * (avgPhaseDiff - 25))) + "%");
+            }
+            else {
+                data.addProperty("avgPhaseDiff", String.format("0") + "%");
+            }
+        }
+        else if ("sugar".equals(sensorDef)) {
+            
+        }
+        else if ("salt".equals(sensorDef)) {
+
+        }
+        else {
+            data.addProperty("avgPhaseDiff", String.format("%.2f", avgPhaseDiff) + "°");
+        }
+            
+        
+        // Create a JSON object to send structured data
+        if (subscription.wantsField("timestamp")) {
+            data.addProperty("timestamp", formattedDate);
+        }
+        if (subscription.wantsField("sensor")) {
+            data.addProperty("sensor", sensorDef);
+        }
+        if (subscription.wantsField("version")) {
+            data.addProperty("version", snapshot.getVersion());
+        }
+
+        // Stream every sensor at once in multi-sensor mode
+        if (config.isMultiSensor() && subscription.wantsField("sensors")) {
+            JsonObject sensors = new JsonObject();
+            for (Map.Entry<String, Double> sensor : snapshot.getSensors().entrySet()) {
+                if (sensor.getValue() >= 0 && subscription.wantsSensor(sensor.getKey())) {
+                    sensors.addProperty(sensor.getKey(), sensor.getValue());
+                }
+            }
+            data.add("sensors", sensors);
+        }
+
+        // Every pair of the sensors that measure several EPC pairs, by pair name
+        if (!snapshot.getPairs().isEmpty() && subscription.wantsField("pairs")) {
+            JsonObject pairs = new JsonObject();
+            for (Map.Entry<String, double[]> sensor : snapshot.getPairs().entrySet()) {
+                if (!subscription.wantsSensor(sensor.getKey())) {
+                    continue;
+                }
+                ConfigSnapshot.SensorConfig sensorConfig = config.getSnapshot().getSensor(ConfigSnapshot.SpatialConfig.sensorOf(sensor.getKey()));
+                JsonObject values = new JsonObject();
+                for (int pair = 0; pair < sensor.getValue().length; pair++) {
+                    if (!Double.isNaN(sensor.getValue()[pair])) {
+                        values.addProperty(sensorConfig.getPairName(pair), sensor.getValue()[pair]);
                     }
-                    else {
-                        data.addProperty("avgPhaseDiff", String.format("%.2f", avgPhaseDiff) + "°");
-                    }
-                        
-                    
-                    // Create a JSON object to send structured data
-                    data.addProperty("timestamp", formattedDate);
-                    data.addProperty("sensor", config.getSensorDef());
-                    
-                    if (avgPhaseDiff >= 0) {
-                        server.broadcastData(data.toString());
-                    }
-                    Thread.sleep(1000); // Send data every second
                 }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                pairs.add(sensor.getKey(), values);
+            }
+            data.add("pairs", pairs);
+        }
+
+        return data.toString();
+    }
+
+    // Names binary frames refer to by index: the sensorNames, followed by the portNames when antenna ports are
+    // published separately
+    private List<String> seriesNames() {
+        List<String> seriesNames = new ArrayList<>(config.getAllSensorNames());
+        seriesNames.addAll(portNames);
+        return seriesNames;
+    }
+
+    // Binary result: type, a mask of the fields that follow, then version, computation time, selected sensor
+    // and its value, and the subscribed sensors with a value, each only if subscribed to. Sensors are referred
+    // to by their index in the seriesNames sent on connect; ones missing from it are left out.
+    private ByteBuffer encodeBinary(PhaseSnapshot snapshot, StreamClient.Subscription subscription) {
+        List<String> seriesNames = seriesNames();
+        int selected = seriesNames.indexOf(snapshot.getSensorDef());
+        int fields = 0;
+        if (subscription.wantsField("version")) {
+            fields |= FIELD_VERSION;
+        }
+        if (subscription.wantsField("timestamp")) {
+            fields |= FIELD_TIMESTAMP;
+        }
+        if (snapshot.hasValue() && subscription.wantsField("avgPhaseDiff") && selected >= 0 && selected <= MAX_SERIES) {
+            fields |= FIELD_SELECTED;
+        }
+        int[] indices = new int[snapshot.getSensors().size()];
+        float[] values = new float[indices.length];
+        int count = 0;
+        if (config.isMultiSensor() && subscription.wantsField("sensors")) {
+            fields |= FIELD_SENSORS;
+            for (Map.Entry<String, Double> sensor : snapshot.getSensors().entrySet()) {
+                int index = seriesNames.indexOf(sensor.getKey());
+                if (sensor.getValue() >= 0 && subscription.wantsSensor(sensor.getKey()) && index >= 0 && index <= MAX_SERIES
+                        && count < MAX_SERIES) {
+                    indices[count] = index;
+                    values[count++] = sensor.getValue().floatValue();
+                }
+            }
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(1 + 1 + 8 + 8 + 2 + 4 + 2 + count * 6);
+        frame.put(RESULT_FRAME).put((byte) fields);
+        if ((fields & FIELD_VERSION) != 0) {
+            frame.putLong(snapshot.getVersion());
+        }
+        if ((fields & FIELD_TIMESTAMP) != 0) {
+            frame.putLong(snapshot.getComputedAtMillis());
+        }
+        if ((fields & FIELD_SELECTED) != 0) {
+            frame.putShort((short) selected).putFloat((float) snapshot.getAvgPhaseDiff());
+        }
+        if ((fields & FIELD_SENSORS) != 0) {
+            frame.putShort((short) count);
+            for (int i = 0; i < count; i++) {
+                frame.putShort((short) indices[i]).putFloat(values[i]);
+            }
+        }
+        frame.flip();
+        return frame;
+    }
+
+    // Queue depths and drops of every connected client
+    private class ClientMetrics implements Metrics.Collector {
+
+        @Override
+        public void collect(StringBuilder out) {
+            Metrics.header(out, "sensync_ws_clients", "gauge", "Connected WebSocket clients");
+            Metrics.sample(out, "sensync_ws_clients", "", clients.size());
+            Metrics.header(out, "sensync_ws_client_queue", "gauge", "Frames waiting for a client, by queue");
+            for (WebSocket conn : clients) {
+                StreamClient client = conn.getAttachment();
+                String labels = Metrics.label("client", String.valueOf(conn.getRemoteSocketAddress()));
+                Metrics.sample(out, "sensync_ws_client_queue", labels + "," + Metrics.label("queue", "results"), client.getPendingResults());
+                Metrics.sample(out, "sensync_ws_client_queue", labels + "," + Metrics.label("queue", "raw"), client.getPendingRaw());
+                Metrics.sample(out, "sensync_ws_client_queue", labels + "," + Metrics.label("queue", "socket"), client.getUnsentFrames());
+            }
+            Metrics.header(out, "sensync_ws_client_dropped_total", "counter", "Frames dropped for a slow client, by stream");
+            for (WebSocket conn : clients) {
+                StreamClient client = conn.getAttachment();
+                String labels = Metrics.label("client", String.valueOf(conn.getRemoteSocketAddress()));
+                Metrics.sample(out, "sensync_ws_client_dropped_total", labels + "," + Metrics.label("stream", "results"), client.getDropped());
+                Metrics.sample(out, "sensync_ws_client_dropped_total", labels + "," + Metrics.label("stream", "raw"), client.getRawDropped());
             }
-        }).start();
+        }
+
+        @Override
+        public String summary() {
+            int deepest = 0;
+            long dropped = 0;
+            for (WebSocket conn : clients) {
+                StreamClient client = conn.getAttachment();
+                deepest = Math.max(deepest, client.getPendingResults() + client.getPendingRaw() + client.getUnsentFrames());
+                dropped += client.getDropped() + client.getRawDropped();
+            }
+            return clients.size() + " WebSocket clients, deepest queue " + deepest + ", " + dropped + " frames dropped";
+        }
+    }
+
+    public static void main(String[] args) {
+        Metrics.get().start(Configs.getCfgInstance().getSnapshot().getMetrics());
+        TagData tagData = new TagData();
+        ReaderGroup readers = new ReaderGroup(tagData);
+        readers.startAll();
+
+        DataStreamer server = new DataStreamer(tagData);
+        server.start();
+
+        // Every result goes to the streamer, which sends it to each client at the client's own rate
+        ComputeScheduler scheduler = new ComputeScheduler(tagData);
+        scheduler.subscribe(server::onSnapshot);
+        PhaseStore store = new PhaseStore(); // Earlier sessions can be queried even when nothing is stored now
+        server.setPhaseStore(store);
+        if (Configs.getCfgInstance().isStoreData()) {
+            new PhaseHistoryWriter(store).start(scheduler);
+        }
+        scheduler.start();
     }
 
 }
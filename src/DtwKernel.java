@@ -0,0 +1,129 @@
+package gui;
+
+// Dynamic time warping of two phase sequences, restricted to a Sakoe-Chiba band.
+// Aligns with the same local cost as the FastDTW path it replaces (absolute phase distance) and sums the
+// wrapped phase difference along the optimal path directly, without materializing the warped sequences.
+// Only the cells inside the band are stored; the scratch arrays are kept per thread and grow on demand,
+// so steady-state alignments don't allocate.
+public final class DtwKernel {
+
+    private static final ThreadLocal<DtwKernel> KERNELS = ThreadLocal.withInitial(DtwKernel::new);
+
+    private static final byte FROM_DIAGONAL = 0;
+    private static final byte FROM_ROW_ABOVE = 1; // (i - 1, j)
+    private static final byte FROM_LEFT = 2;      // (i, j - 1)
+
+    private double[] cost = new double[1024];  // Accumulated cost of the banded cells, row by row
+    private byte[] step = new byte[1024];      // Predecessor of each banded cell
+    private int[] rowFirst = new int[64];      // First column inside the band, per row
+    private int[] rowLast = new int[64];       // Last column inside the band, per row
+    private int[] rowOffset = new int[64];     // Index of the row's first cell in cost/step
+
+    private int pathLength = 0;
+
+    private DtwKernel() {
+    }
+
+    // Kernel with the calling thread's scratch buffers
+    public static DtwKernel forCurrentThread() {
+        return KERNELS.get();
+    }
+
+    // Align s1[from1, from1 + n1) with s2[from2, from2 + n2) and return the sum of the wrapped phase differences
+    // along the warp path. band is the half width of the Sakoe-Chiba band around the (scaled) diagonal, in
+    // samples; 0 or less aligns without a band. The number of path cells is available from getPathLength().
+    public double alignedPhaseDiffSum(double[] s1, int from1, int n1, double[] s2, int from2, int n2, int band) {
+        pathLength = 0;
+        if (n1 == 0 || n2 == 0) {
+            return 0;
+        }
+        layoutBand(n1, n2, band);
+
+        // Fill the band row by row; cells outside the band count as unreachable
+        for (int i = 0; i < n1; i++) {
+            double phase1 = s1[from1 + i];
+            for (int j = rowFirst[i]; j <= rowLast[i]; j++) {
+                int cell = rowOffset[i] + j - rowFirst[i];
+                double local = Math.abs(phase1 - s2[from2 + j]);
+                if (i == 0 && j == 0) {
+                    cost[cell] = local;
+                    step[cell] = FROM_DIAGONAL;
+                    continue;
+                }
+                double diagonal = i > 0 ? at(i - 1, j - 1) : Double.POSITIVE_INFINITY;
+                double above = i > 0 ? at(i - 1, j) : Double.POSITIVE_INFINITY;
+                double left = j > rowFirst[i] ? cost[cell - 1] : Double.POSITIVE_INFINITY;
+                if (diagonal <= above && diagonal <= left) {
+                    cost[cell] = local + diagonal;
+                    step[cell] = FROM_DIAGONAL;
+                } else if (left < above) {
+                    cost[cell] = local + left;
+                    step[cell] = FROM_LEFT;
+                } else {
+                    cost[cell] = local + above;
+                    step[cell] = FROM_ROW_ABOVE;
+                }
+            }
+        }
+
+        // Walk the path back from the last cell, summing the wrapped differences on the way
+        double sum = 0;
+        int i = n1 - 1;
+        int j = n2 - 1;
+        while (true) {
+            sum += SensorPipeline.wrappedPhaseDiff(s1[from1 + i], s2[from2 + j]);
+            pathLength++;
+            if (i == 0 && j == 0) {
+                break;
+            }
+            byte from = step[rowOffset[i] + j - rowFirst[i]];
+            if (from == FROM_DIAGONAL) {
+                i--;
+                j--;
+            } else if (from == FROM_LEFT) {
+                j--;
+            } else {
+                i--;
+            }
+        }
+        return sum;
+    }
+
+    // Number of cells on the path of the last alignment
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    // Accumulated cost of a cell, infinite outside the band
+    private double at(int i, int j) {
+        if (j < rowFirst[i] || j > rowLast[i]) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return cost[rowOffset[i] + j - rowFirst[i]];
+    }
+
+    // Column range of every row and the storage they need
+    private void layoutBand(int n1, int n2, int band) {
+        if (rowFirst.length < n1) {
+            int length = Math.max(n1, rowFirst.length * 2);
+            rowFirst = new int[length];
+            rowLast = new int[length];
+            rowOffset = new int[length];
+        }
+        // The band has to be at least as wide as the diagonal's slope or consecutive rows wouldn't connect
+        int halfWidth = band <= 0 ? n2 : Math.max(band, (n2 + n1 - 1) / n1);
+        int cells = 0;
+        for (int i = 0; i < n1; i++) {
+            int center = n1 == 1 ? 0 : (int) ((long) i * (n2 - 1) / (n1 - 1));
+            rowFirst[i] = Math.max(0, center - halfWidth);
+            rowLast[i] = Math.min(n2 - 1, center + halfWidth);
+            rowOffset[i] = cells;
+            cells += rowLast[i] - rowFirst[i] + 1;
+        }
+        if (cost.length < cells) {
+            int length = Math.max(cells, cost.length * 2);
+            cost = new double[length];
+            step = new byte[length];
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Lookup table from EPCs to compact integer ids.
+// An EPC of up to 128 bits is decoded straight from its hex text into two longs and looked up in an
+// open-addressing hash table, so resolving a read never builds intermediate strings or boxes.
+// Spaces in the text (as printed by the Octane SDK) are skipped. The table is filled while params.xml
+// is parsed and only read afterwards.
+public class EpcTable {
+
+    private static final int MAX_HEX_DIGITS = 32;
+
+    private long[] keyHi = new long[16];
+    private long[] keyLo = new long[16];
+    private int[] keyLength = new int[16]; // Hex digit count, so "0A" and "000A" stay distinct
+    private int[] ids = new int[16];       // id + 1, 0 marks an empty slot
+    private final List<String> names = new ArrayList<>();
+
+    // Id of an EPC, assigning the next free one if it's new. Returns -1 if the text isn't a valid EPC.
+    public int intern(CharSequence epc) {
+        int id = find(epc);
+        if (id >= 0 || !isValid(epc)) {
+            return id;
+        }
+        if ((names.size() + 1) * 2 > ids.length) {
+            rehash(ids.length * 2);
+        }
+        id = names.size();
+        names.add(normalize(epc));
+        long[] bits = decode(epc);
+        insert(bits[0], bits[1], digits(epc), id);
+        return id;
+    }
+
+    // Id of an EPC, or -1 if it isn't in the table
+    public int find(CharSequence epc) {
+        long hi = 0;
+        long lo = 0;
+        int length = 0;
+        for (int i = 0; i < epc.length(); i++) {
+            char c = epc.charAt(i);
+            if (c == ' ') {
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0 || length == MAX_HEX_DIGITS) {
+                return -1;
+            }
+            hi = (hi << 4) | (lo >>> 60);
+            lo = (lo << 4) | digit;
+            length++;
+        }
+        return find(hi, lo, length);
+    }
+
+    // Id of an EPC given as its decoded bits, or -1 if it isn't in the table
+    public int find(long hi, long lo, int length) {
+        int mask = ids.length - 1;
+        for (int slot = hash(hi, lo) & mask; ids[slot] != 0; slot = (slot + 1) & mask) {
+            if (keyHi[slot] == hi && keyLo[slot] == lo && keyLength[slot] == length) {
+                return ids[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // EPC hex string (upper case, no spaces) of an id
+    public String name(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    private void insert(long hi, long lo, int length, int id) {
+        int mask = ids.length - 1;
+        int slot = hash(hi, lo) & mask;
+        while (ids[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keyHi[slot] = hi;
+        keyLo[slot] = lo;
+        keyLength[slot] = length;
+        ids[slot] = id + 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldHi = keyHi;
+        long[] oldLo = keyLo;
+        int[] oldLength = keyLength;
+        int[] oldIds = ids;
+        keyHi = new long[capacity];
+        keyLo = new long[capacity];
+        keyLength = new int[capacity];
+        ids = new int[capacity];
+        for (int i = 0; i < oldIds.length; i++) {
+            if (oldIds[i] != 0) {
+                insert(oldHi[i], oldLo[i], oldLength[i], oldIds[i] - 1);
+            }
+        }
+    }
+
+    private static int hash(long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+        h *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static boolean isValid(CharSequence epc) {
+        int length = digits(epc);
+        if (length == 0 || length > MAX_HEX_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < epc.length(); i++) {
+            char c = epc.charAt(i);
+            if (c != ' ' && Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int digits(CharSequence epc) {
+        int length = 0;
+        for (int i = 0; i < epc.length(); i++) {
+            if (epc.charAt(i) != ' ') {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    private static long[] decode(CharSequence epc) {
+        long hi = 0;
+        long lo = 0;
+        for (int i = 0; i < epc.length(); i++) {
+            char c = epc.charAt(i);
+            if (c != ' ') {
+                hi = (hi << 4) | (lo >>> 60);
+                lo = (lo << 4) | Character.digit(c, 16);
+            }
+        }
+        return new long[]{hi, lo};
+    }
+
+    private static String normalize(CharSequence epc) {
+        StringBuilder sb = new StringBuilder(epc.length());
+        for (int i = 0; i < epc.length(); i++) {
+            char c = epc.charAt(i);
+            if (c != ' ') {
+                sb.append(Character.toUpperCase(c));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package gui;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded lock-free queue of tag reads between the reader callback thread and the processing stage.
+// One producer (the Octane SDK callback) and any number of consumers. Reads are copied into parallel
+// primitive slot arrays, so neither side allocates. Each slot carries a sequence number that tells
+// whether it is free for the producer or published for the consumers, after D. Vyukov's bounded queue.
+// What happens when the queue is full is decided by the overflow policy; every discarded read is counted.
+public class IngestQueue {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, // Discard the oldest queued read to make room (keeps the stream fresh)
+        DROP_NEWEST, // Discard the incoming read
+        BLOCK;       // Wait in the producer until a consumer frees a slot
+
+        // Parse the <overflow_policy> value from params.xml, e.g. "drop_oldest"
+        public static OverflowPolicy parse(String value) {
+            return OverflowPolicy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    // Receives drained reads on the consumer thread
+    public interface ReadHandler {
+        void onRead(int antenna, int epcId, long timestamp, double channel, double phase, double rssi);
+    }
+
+    private final int mask;
+    private final OverflowPolicy policy;
+
+    private final AtomicLongArray sequences;
+    private final int[] antennas;
+    private final int[] epcIds;
+    private final long[] timestamps;
+    private final double[] channels;
+    private final double[] phases;
+    private final double[] rssis;
+
+    private final AtomicLong head = new AtomicLong(); // Next position to consume, claimed by CAS
+    private volatile long tail = 0;                   // Next position to produce, written by the producer only
+
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public IngestQueue(int capacity, OverflowPolicy policy) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1; // Round up to a power of two
+        this.mask = size - 1;
+        this.policy = policy;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.antennas = new int[size];
+        this.epcIds = new int[size];
+        this.timestamps = new long[size];
+        this.channels = new double[size];
+        this.phases = new double[size];
+        this.rssis = new double[size];
+    }
+
+    // Enqueue a read from the producer thread. Returns false if the read itself was dropped.
+    public boolean offer(int antenna, int epcId, long timestamp, double channel, double phase, double rssi) {
+        offered.incrementAndGet();
+        long position = tail;
+        int slot = (int) position & mask;
+        while (sequences.get(slot) != position) {
+            // The slot still holds the read from one lap ago, the queue is full
+            switch (policy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return false;
+                case DROP_OLDEST:
+                    if (poll(null)) {
+                        dropped.incrementAndGet();
+                    } else {
+                        Thread.onSpinWait(); // A consumer claimed the slot and is still copying it out
+                    }
+                    break;
+                case BLOCK:
+                    LockSupport.parkNanos(10_000);
+                    break;
+            }
+        }
+
+        antennas[slot] = antenna;
+        epcIds[slot] = epcId;
+        timestamps[slot] = timestamp;
+        channels[slot] = channel;
+        phases[slot] = phase;
+        rssis[slot] = rssi;
+        sequences.lazySet(slot, position + 1); // Publish to consumers
+        tail = position + 1;
+        return true;
+    }
+
+    // Hand up to max queued reads to the handler. Returns how many were drained.
+    public int drain(ReadHandler handler, int max) {
+        int count = 0;
+        while (count < max && poll(handler)) {
+            count++;
+        }
+        return count;
+    }
+
+    // Take the oldest read, passing it to the handler unless it is null. Returns false if the queue is empty.
+    private boolean poll(ReadHandler handler) {
+        while (true) {
+            long position = head.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence < position + 1) {
+                return false; // Nothing published at this position yet
+            }
+            if (sequence == position + 1 && head.compareAndSet(position, position + 1)) {
+                int antenna = antennas[slot];
+                int epcId = epcIds[slot];
+                long timestamp = timestamps[slot];
+                double channel = channels[slot];
+                double phase = phases[slot];
+                double rssi = rssis[slot];
+                sequences.lazySet(slot, position + mask + 1); // Free the slot for the next lap
+                if (handler != null) {
+                    handler.onRead(antenna, epcId, timestamp, channel, phase, rssi);
+                }
+                return true;
+            }
+            // Another consumer won the race, retry with the new head
+        }
+    }
+
+    public int size() {
+        return (int) Math.max(0, tail - head.get());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    // Reads handed to offer() so far
+    public long getOffered() {
+        return offered.get();
+    }
+
+    // Reads discarded because the queue was full
+    public long getDropped() {
+        return dropped.get();
+    }
+}
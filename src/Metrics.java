@@ -0,0 +1,240 @@
+package gui;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Registry of the pipeline's metrics, exposed in the Prometheus text format on a local HTTP endpoint and
+// summarized in a periodic log line.
+// Components keep their own counters and histograms, recorded without allocating or locking, and
+// register a Collector that writes them out; collecting only happens when scraped or logged.
+public class Metrics {
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    // Writes a component's metrics at scrape time; each metric name must come from a single collector
+    public interface Collector {
+        void collect(StringBuilder out);
+
+        // One line for the periodic log, or null
+        default String summary() {
+            return null;
+        }
+    }
+
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+    private HttpServer server = null;
+    private ScheduledExecutorService log = null;
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    public void register(Collector collector) {
+        collectors.add(collector);
+    }
+
+    public void unregister(Collector collector) {
+        collectors.remove(collector);
+    }
+
+    // Start the scrape endpoint and the periodic log configured in <metrics>
+    public synchronized void start(ConfigSnapshot.MetricsConfig settings) {
+        if (!settings.isEnabled() || server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(settings.getHost(), settings.getPort()), 0);
+            server.createContext("/metrics", exchange -> {
+                byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-http");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            System.out.println("Metrics on http://" + settings.getHost() + ":" + settings.getPort() + "/metrics");
+        } catch (IOException e) {
+            System.out.println("Could not start the metrics endpoint: " + e.getMessage());
+            server = null;
+        }
+        if (settings.getLogIntervalSeconds() > 0) {
+            log = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-log");
+                thread.setDaemon(true);
+                return thread;
+            });
+            log.scheduleAtFixedRate(this::logSummary, settings.getLogIntervalSeconds(), settings.getLogIntervalSeconds(), TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (log != null) {
+            log.shutdownNow();
+            log = null;
+        }
+    }
+
+    // All metrics in the Prometheus text format
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        for (Collector collector : collectors) {
+            try {
+                collector.collect(out);
+            } catch (RuntimeException e) {
+                // A broken collector must not take the others down
+                e.printStackTrace();
+            }
+        }
+        return out.toString();
+    }
+
+    private void logSummary() {
+        for (Collector collector : collectors) {
+            try {
+                String summary = collector.summary();
+                if (summary != null) {
+                    System.out.println("Metrics: " + summary);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // HELP and TYPE lines of a metric, written once before its samples
+    public static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // One sample; labels are pre-rendered with label(), empty for none
+    public static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    public static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    // Latency histogram over nanoseconds with 8 log-linear buckets per power of two, so quantiles are
+    // within 12.5%. Recording is two atomic increments; any thread may record and read.
+    public static final class Histogram {
+
+        private static final int SUB_BITS = 3;
+        private static final int SUB_MASK = (1 << SUB_BITS) - 1;
+        private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+        private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS) << SUB_BITS);
+        private final AtomicLong sumNanos = new AtomicLong();
+
+        public void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            counts.incrementAndGet(bucket(nanos));
+            sumNanos.addAndGet(nanos);
+        }
+
+        // Elapsed time since a System.nanoTime() start
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        static int bucket(long nanos) {
+            if (nanos <= SUB_MASK) {
+                return (int) nanos; // Exact below 8 ns
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) + (int) ((nanos >>> (exponent - SUB_BITS)) & SUB_MASK);
+        }
+
+        // Middle of a bucket's range in nanoseconds
+        static double value(int bucket) {
+            if (bucket <= SUB_MASK) {
+                return bucket;
+            }
+            int shift = (bucket >>> SUB_BITS) - 1;
+            long lower = (long) ((SUB_MASK + 1) | (bucket & SUB_MASK)) << shift;
+            return lower + ((1L << shift) - 1) / 2.0;
+        }
+
+        // Snapshot of the bucket counts, so all quantiles of one scrape agree
+        public long[] snapshot() {
+            long[] snapshot = new long[counts.length()];
+            for (int i = 0; i < snapshot.length; i++) {
+                snapshot[i] = counts.get(i);
+            }
+            return snapshot;
+        }
+
+        // Quantile in nanoseconds of a snapshot, NaN when nothing was recorded
+        public static double quantile(long[] snapshot, double q) {
+            long total = 0;
+            for (long count : snapshot) {
+                total += count;
+            }
+            if (total == 0) {
+                return Double.NaN;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return value(i);
+                }
+            }
+            return value(snapshot.length - 1);
+        }
+
+        // Quantiles, sum and count as a Prometheus summary in seconds
+        public void write(StringBuilder out, String name, String labels) {
+            long[] snapshot = snapshot();
+            long count = 0;
+            for (long bucketCount : snapshot) {
+                count += bucketCount;
+            }
+            String separator = labels.isEmpty() ? "" : labels + ",";
+            for (double q : QUANTILES) {
+                sample(out, name, separator + label("quantile", Double.toString(q)), quantile(snapshot, q) / 1e9);
+            }
+            sample(out, name + "_sum", labels, sumNanos.get() / 1e9);
+            sample(out, name + "_count", labels, count);
+        }
+
+        // "p50 1.2 ms, p99 3.4 ms" for the log
+        public String summary() {
+            long[] snapshot = snapshot();
+            return String.format("p50 %.3f ms, p99 %.3f ms", quantile(snapshot, 0.5) / 1e6, quantile(snapshot, 0.99) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package gui;
+
+// Bulk wrapped phase difference of two aligned phase sequences, the inner loop of the matched pass.
+// Walks the ring buffers of both PhaseSeries as contiguous array segments instead of indexing them one
+// phase at a time, and folds the 360 and 180 degree ambiguities without branching, so noisy phases don't
+// cost a branch misprediction per element. Results are bit for bit those of summing
+// SensorPipeline.wrappedPhaseDiff in order: each difference is computed with the same operations and the
+// sum is accumulated in the same order.
+public final class PhaseDiffKernel {
+
+    private PhaseDiffKernel() {
+    }
+
+    // Sum of the wrapped differences of the first length phases of both series, oldest first
+    public static double sum(PhaseIndex.PhaseSeries series1, PhaseIndex.PhaseSeries series2, int length) {
+        double sum = 0.0;
+        int i = 0;
+        while (i < length) {
+            // Longest run from i that is contiguous in both ring buffers
+            int n = Math.min(length - i, Math.min(series1.contiguous(i), series2.contiguous(i)));
+            sum = sum(series1.values(), series1.index(i), series2.values(), series2.index(i), n, sum);
+            i += n;
+        }
+        return sum;
+    }
+
+    // Add the wrapped differences of phases1[from1, from1 + n) and phases2[from2, from2 + n) to sum
+    public static double sum(double[] phases1, int from1, double[] phases2, int from2, int n, double sum) {
+        for (int i = 0; i < n; i++) {
+            double diff = Math.abs(phases1[from1 + i] - phases2[from2 + i]);
+            // Subtracting 0 leaves a non-negative diff unchanged, so one fold covers all three cases
+            double fold = diff > 270 ? 360 : (diff > 135 ? 180 : 0);
+            sum += Math.abs(diff - fold);
+        }
+        return sum;
+    }
+
+    // Reference loop over wrappedPhaseDiff, the scalar fallback
+    public static double scalarSum(PhaseIndex.PhaseSeries series1, PhaseIndex.PhaseSeries series2, int length) {
+        double sum = 0.0;
+        for (int i = 0; i < length; i++) {
+            sum += SensorPipeline.wrappedPhaseDiff(series1.get(i), series2.get(i));
+        }
+        return sum;
+    }
+}
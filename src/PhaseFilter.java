@@ -0,0 +1,163 @@
+package gui;
+
+import java.util.Arrays;
+
+// Robust filter of the phases entering a sensor's window, per (EPC, channel), as configured by the
+// sensor's <filter>.
+// Phases are unwrapped against the previous output of their EPC/channel before filtering, so a series
+// crossing 0/360 degrees stays continuous and a half-cycle flip shows up as a 180 degree outlier. The median
+// and Hampel filters keep the last <length> phases both in arrival order and sorted; each read moves one
+// value in the sorted copy by binary search instead of re-sorting the window. Outputs are wrapped back to
+// [0, 360). State is created once per EPC/channel, after that filtering doesn't allocate.
+// Not thread-safe, callers synchronize around it together with the ring buffer it feeds.
+public class PhaseFilter {
+
+    // Scales the median absolute deviation to the standard deviation of normally distributed phases
+    private static final double MAD_SCALE = 1.4826;
+
+    private final ConfigSnapshot.FilterConfig config;
+    private State[][] states = new State[2][]; // [epcId][channelId]
+    private long replaced = 0;                 // Phases the Hampel filter replaced by the median
+
+    public PhaseFilter(ConfigSnapshot.FilterConfig config) {
+        this.config = config;
+    }
+
+    // Filtered phase of a read; the phase itself when filtering is off
+    public double apply(int epcId, int channelId, double phase) {
+        if (!config.isEnabled() || Double.isNaN(phase)) {
+            return phase;
+        }
+        State state = stateFor(epcId, channelId);
+        // Unwrap to within 180 degrees of the previous output
+        double unwrapped = state.started ? phase + 360 * Math.rint((state.reference - phase) / 360) : phase;
+
+        double filtered;
+        switch (config.getType()) {
+            case EWMA:
+                filtered = state.started ? state.reference + config.getAlpha() * (unwrapped - state.reference) : unwrapped;
+                break;
+            case MEDIAN:
+                state.push(unwrapped);
+                filtered = state.median();
+                break;
+            default: // HAMPEL
+                state.push(unwrapped);
+                double median = state.median();
+                if (Math.abs(unwrapped - median) > config.getThreshold() * MAD_SCALE * state.mad(median)) {
+                    filtered = median;
+                    replaced++;
+                } else {
+                    filtered = unwrapped;
+                }
+                break;
+        }
+        state.reference = filtered;
+        state.started = true;
+
+        double wrapped = filtered % 360;
+        return wrapped < 0 ? wrapped + 360 : wrapped;
+    }
+
+    public long getReplaced() {
+        return replaced;
+    }
+
+    // Forget every series, e.g. after the ring buffer was cleared
+    public void clear() {
+        for (State[] byChannel : states) {
+            if (byChannel != null) {
+                for (State state : byChannel) {
+                    if (state != null) {
+                        state.clear();
+                    }
+                }
+            }
+        }
+    }
+
+    private State stateFor(int epcId, int channelId) {
+        if (epcId >= states.length) {
+            states = Arrays.copyOf(states, Math.max(epcId + 1, states.length * 2));
+        }
+        State[] byChannel = states[epcId];
+        if (byChannel == null || channelId >= byChannel.length) {
+            byChannel = byChannel == null ? new State[Math.max(16, channelId + 1)]
+                    : Arrays.copyOf(byChannel, Math.max(byChannel.length * 2, channelId + 1));
+            states[epcId] = byChannel;
+        }
+        State state = byChannel[channelId];
+        if (state == null) {
+            state = new State(config.getLength());
+            byChannel[channelId] = state;
+        }
+        return state;
+    }
+
+    // Filter state of one EPC/channel: the previous output and the last phases, unwrapped
+    private static final class State {
+        private final double[] recent; // Ring of the last phases in arrival order
+        private final double[] sorted; // The same phases, ascending in sorted[0, size)
+        private int head = 0;          // Oldest phase in recent
+        private int size = 0;
+        private double reference = 0;
+        private boolean started = false;
+
+        private State(int length) {
+            this.recent = new double[length];
+            this.sorted = new double[length];
+        }
+
+        // Add a phase, dropping the oldest once the window is full
+        private void push(double phase) {
+            if (size == recent.length) {
+                int at = Arrays.binarySearch(sorted, 0, size, recent[head]);
+                System.arraycopy(sorted, at + 1, sorted, at, size - at - 1);
+                recent[head] = phase;
+                head = (head + 1) % recent.length;
+                size--;
+            } else {
+                recent[(head + size) % recent.length] = phase;
+            }
+            int at = Arrays.binarySearch(sorted, 0, size, phase);
+            if (at < 0) {
+                at = -at - 1;
+            }
+            System.arraycopy(sorted, at, sorted, at + 1, size - at);
+            sorted[at] = phase;
+            size++;
+        }
+
+        private double median() {
+            return size % 2 == 1 ? sorted[size / 2] : (sorted[size / 2 - 1] + sorted[size / 2]) / 2;
+        }
+
+        // Median absolute deviation from the median, merging the deviations of both halves of the sorted
+        // window outward from the middle
+        private double mad(double median) {
+            return size % 2 == 1 ? deviation(median, size / 2) : (deviation(median, size / 2 - 1) + deviation(median, size / 2)) / 2;
+        }
+
+        // k-th smallest absolute deviation from the median, counting from 0
+        private double deviation(double median, int k) {
+            int lower = (size - 1) / 2;
+            int upper = lower + 1;
+            double deviation = 0;
+            for (int step = 0; step <= k; step++) {
+                if (upper >= size || (lower >= 0 && median - sorted[lower] <= sorted[upper] - median)) {
+                    deviation = median - sorted[lower--];
+                } else {
+                    deviation = sorted[upper++] - median;
+                }
+            }
+            return deviation;
+        }
+
+        private void clear() {
+            head = 0;
+            size = 0;
+            reference = 0;
+            started = false;
+        }
+    }
+}
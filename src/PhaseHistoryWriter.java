@@ -0,0 +1,175 @@
+package gui;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// Appends every computed result to rolling, gzip-compressed CSV files under data/phases/.
+// Results are queued by the compute thread and written by a background thread in chunks; each chunk is a
+// complete gzip member appended to the current file (readable with any gzip tool), so a crash loses at
+// most the chunk being collected. Files roll over by size and age, the oldest beyond <max_files> are
+// deleted, and the last chunk is written on shutdown. Results are also appended to the PhaseStore as they
+// arrive, so range queries see them without waiting for the chunk.
+// Lines are: computation time in ms since epoch, snapshot version, sensor, phase difference.
+public class PhaseHistoryWriter {
+
+    private static final String SUFFIX = ".csv.gz";
+
+    private final ConfigSnapshot.HistoryConfig settings;
+    private final PhaseStore store;
+    private final Path directory;
+    private final String prefix;
+    private final BlockingQueue<PhaseSnapshot> queue;
+    private final Thread writer;
+
+    private volatile boolean running = false;
+    private volatile long dropped = 0; // Only the compute thread counts
+
+    private Path file = null;
+    private long fileBytes = 0;
+    private long fileOpenedMillis = 0;
+
+    public PhaseHistoryWriter(PhaseStore store) {
+        Configs config = Configs.getCfgInstance();
+        this.settings = config.getSnapshot().getHistory();
+        this.store = store;
+        Path directory = Paths.get(settings.getDirectory());
+        if (!directory.isAbsolute()) {
+            directory = Paths.get(Configs.getLocalParentPath(config.getRepoName())).resolve(directory);
+        }
+        this.directory = directory;
+        this.prefix = config.getProjectName() + "_";
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, settings.getChunkRecords() * 4));
+        this.writer = new Thread(this::run, "phase-history");
+    }
+
+    // Record the scheduler's results until the process exits
+    public void start(ComputeScheduler scheduler) {
+        running = true;
+        writer.start();
+        scheduler.subscribe(this::onSnapshot);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "phase-history-flush"));
+    }
+
+    // Write what is still queued and stop. The writer sees the flag within one poll timeout; it is never
+    // interrupted, since an interrupt during a FileChannel write closes the PhaseStore's channel for good.
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Scheduler subscriber, must not block the compute thread
+    private void onSnapshot(PhaseSnapshot snapshot) {
+        if (!queue.offer(snapshot)) {
+            dropped++;
+        }
+    }
+
+    private void run() {
+        List<PhaseSnapshot> chunk = new ArrayList<>();
+        List<PhaseSnapshot> arrived = new ArrayList<>();
+        long chunkStartedMillis = System.currentTimeMillis();
+        while (running || !queue.isEmpty()) {
+            try {
+                PhaseSnapshot snapshot = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (snapshot != null) {
+                    arrived.add(snapshot);
+                    queue.drainTo(arrived, settings.getChunkRecords() - chunk.size() - 1);
+                }
+            } catch (InterruptedException e) {
+                // stop() doesn't interrupt; keep going until running is cleared and the queue is empty
+            }
+            if (!arrived.isEmpty()) {
+                store.append(arrived);
+                chunk.addAll(arrived);
+                arrived.clear();
+            }
+            boolean full = chunk.size() >= settings.getChunkRecords();
+            boolean due = System.currentTimeMillis() - chunkStartedMillis >= settings.getFlushIntervalMillis();
+            if (!chunk.isEmpty() && (full || due || !running)) {
+                writeChunk(chunk);
+                chunk.clear();
+            }
+            if (full || due) {
+                chunkStartedMillis = System.currentTimeMillis();
+            }
+        }
+        if (dropped > 0) {
+            System.out.println("Phase history dropped " + dropped + " results, the writer couldn't keep up");
+        }
+    }
+
+    // Append the chunk to the current file as one gzip member
+    private void writeChunk(List<PhaseSnapshot> chunk) {
+        StringBuilder lines = new StringBuilder();
+        for (PhaseSnapshot snapshot : chunk) {
+            for (Map.Entry<String, Double> sensor : snapshot.getSensors().entrySet()) {
+                if (sensor.getValue() >= 0) {
+                    lines.append(snapshot.getComputedAtMillis()).append(',').append(snapshot.getVersion()).append(',')
+                            .append(sensor.getKey()).append(',').append(sensor.getValue()).append('\n');
+                }
+            }
+        }
+        if (lines.length() == 0) {
+            return;
+        }
+        try {
+            rollIfNeeded();
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            fileBytes = Files.size(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Start a new file when the current one is too large or too old, then enforce the retention
+    private void rollIfNeeded() throws IOException {
+        long now = System.currentTimeMillis();
+        if (file != null && fileBytes < settings.getMaxFileBytes() && now - fileOpenedMillis < settings.getRollMillis()) {
+            return;
+        }
+        Files.createDirectories(directory);
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(now));
+        file = directory.resolve(prefix + timestamp + SUFFIX);
+        fileBytes = Files.exists(file) ? Files.size(file) : 0;
+        fileOpenedMillis = now;
+        System.out.println("Phase history goes to " + file);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)) {
+            for (Path entry : entries) {
+                files.add(entry);
+            }
+        }
+        Collections.sort(files); // Timestamped names sort oldest first
+        for (int i = 0; i < files.size() - settings.getMaxFiles(); i++) {
+            if (!files.get(i).equals(file)) {
+                Files.deleteIfExists(files.get(i));
+            }
+        }
+    }
+}
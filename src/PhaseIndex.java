@@ -0,0 +1,171 @@
+package gui;
+
+import java.util.Arrays;
+
+// Live index of phase readings keyed by (EPC, channel).
+// Every read inside the current window is appended to the sequence of its EPC/channel pair and removed
+// again when it leaves the window, so the per-channel phase arrays are always ready to use without
+// regrouping or boxing. EPC ids are the interned ids used by TagData; channels are interned here.
+// Not thread-safe, callers synchronize around it together with the ring buffer it mirrors.
+public class PhaseIndex {
+
+    private double[] channels = new double[16]; // Channel frequency (MHz) for each channel id
+    private int channelCount = 0;
+    private int lastChannelId = -1;             // Reads hop channels slowly, so the last hit is usually right
+
+    private PhaseSeries[][] series = new PhaseSeries[2][]; // [epcId][channelId]
+
+    // Map a channel frequency to its id, assigning a new one on first sight
+    public int channelId(double channel) {
+        if (lastChannelId >= 0 && channels[lastChannelId] == channel) {
+            return lastChannelId;
+        }
+        for (int i = 0; i < channelCount; i++) {
+            if (channels[i] == channel) {
+                lastChannelId = i;
+                return i;
+            }
+        }
+        if (channelCount == channels.length) {
+            channels = Arrays.copyOf(channels, channelCount * 2);
+        }
+        channels[channelCount] = channel;
+        lastChannelId = channelCount;
+        return channelCount++;
+    }
+
+    public int channelCount() {
+        return channelCount;
+    }
+
+    public double channel(int channelId) {
+        return channels[channelId];
+    }
+
+    // Record a phase that entered the window
+    public void add(int epcId, int channelId, double phase) {
+        seriesFor(epcId, channelId).addLast(phase);
+    }
+
+    // Drop the oldest phase of an EPC/channel pair once its read has left the window
+    public void evict(int epcId, int channelId) {
+        PhaseSeries s = series(epcId, channelId);
+        if (s != null && s.size() > 0) {
+            s.removeFirst();
+        }
+    }
+
+    // Phases of an EPC on a channel in arrival order, or null if none were ever seen
+    public PhaseSeries series(int epcId, int channelId) {
+        if (epcId < 0 || epcId >= series.length || series[epcId] == null || channelId >= series[epcId].length) {
+            return null;
+        }
+        return series[epcId][channelId];
+    }
+
+    public void clear() {
+        for (PhaseSeries[] byChannel : series) {
+            if (byChannel != null) {
+                for (PhaseSeries s : byChannel) {
+                    if (s != null) {
+                        s.clear();
+                    }
+                }
+            }
+        }
+    }
+
+    private PhaseSeries seriesFor(int epcId, int channelId) {
+        if (epcId >= series.length) {
+            series = Arrays.copyOf(series, Math.max(epcId + 1, series.length * 2));
+        }
+        PhaseSeries[] byChannel = series[epcId];
+        if (byChannel == null) {
+            byChannel = new PhaseSeries[Math.max(channels.length, channelId + 1)];
+            series[epcId] = byChannel;
+        } else if (channelId >= byChannel.length) {
+            byChannel = Arrays.copyOf(byChannel, Math.max(channels.length, channelId + 1));
+            series[epcId] = byChannel;
+        }
+        PhaseSeries s = byChannel[channelId];
+        if (s == null) {
+            s = new PhaseSeries();
+            byChannel[channelId] = s;
+        }
+        return s;
+    }
+
+    // Growable FIFO of primitive phase values
+    public static class PhaseSeries {
+        private double[] values = new double[64];
+        private int head = 0;
+        private int size = 0;
+
+        void addLast(double value) {
+            if (size == values.length) {
+                grow();
+            }
+            values[(head + size) % values.length] = value;
+            size++;
+        }
+
+        void removeFirst() {
+            head = (head + 1) % values.length;
+            size--;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // i-th oldest phase in the window
+        public double get(int i) {
+            return values[(head + i) % values.length];
+        }
+
+        // Backing array of the phases; the i-th oldest is at values()[index(i)]
+        public double[] values() {
+            return values;
+        }
+
+        public int index(int i) {
+            return (head + i) % values.length;
+        }
+
+        // Number of phases from the i-th oldest on that are contiguous in values()
+        public int contiguous(int i) {
+            int index = index(i);
+            return Math.min(size - i, values.length - index);
+        }
+
+        // Copy the phases (oldest first) into dst starting at offset
+        public void copyTo(double[] dst, int offset) {
+            int firstPart = Math.min(size, values.length - head);
+            System.arraycopy(values, head, dst, offset, firstPart);
+            System.arraycopy(values, 0, dst, offset + firstPart, size - firstPart);
+        }
+
+        // Copy the phases (oldest first) into a new array
+        public double[] toArray() {
+            double[] out = new double[size];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = get(i);
+            }
+            return out;
+        }
+
+        private void grow() {
+            double[] grown = new double[values.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = get(i);
+            }
+            values = grown;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package gui;
+
+import java.util.Collections;
+import java.util.Map;
+
+// Immutable result of one compute tick: the selected sensor's phase difference and, in multi-sensor mode,
+// every sensor's, plus the per-pair values of sensors measuring several EPC pairs. Versions increase by one
+// per tick, so subscribers can tell fresh results from repeats.
+public final class PhaseSnapshot {
+
+    private final long version;
+    private final long computedAtMillis;
+    private final String sensorDef;
+    private final double avgPhaseDiff;
+    private final Map<String, Double> sensors;
+    private final Map<String, double[]> pairs;
+
+    PhaseSnapshot(long version, long computedAtMillis, String sensorDef, double avgPhaseDiff, Map<String, Double> sensors,
+                  Map<String, double[]> pairs) {
+        this.version = version;
+        this.computedAtMillis = computedAtMillis;
+        this.sensorDef = sensorDef;
+        this.avgPhaseDiff = avgPhaseDiff;
+        this.sensors = Collections.unmodifiableMap(sensors);
+        this.pairs = Collections.unmodifiableMap(pairs);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getComputedAtMillis() {
+        return computedAtMillis;
+    }
+
+    // Sensor that was selected when the tick ran
+    public String getSensorDef() {
+        return sensorDef;
+    }
+
+    // Phase difference of the selected sensor, -1000 if there wasn't enough data
+    public double getAvgPhaseDiff() {
+        return avgPhaseDiff;
+    }
+
+    public boolean hasValue() {
+        return avgPhaseDiff >= 0;
+    }
+
+    // Phase difference of every computed sensor, -1000 for those without enough data
+    public Map<String, Double> getSensors() {
+        return sensors;
+    }
+
+    // Phase difference of every EPC pair of the sensors that measure more than one, keyed like getSensors and
+    // ordered like SensorConfig's pairs; NaN for pairs without a value. The arrays must not be modified.
+    public Map<String, double[]> getPairs() {
+        return pairs;
+    }
+}
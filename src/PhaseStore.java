@@ -0,0 +1,434 @@
+package gui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Indexed on-disk time series of the computed phase differences, one series per sensor, answering range
+// queries downsampled to a requested point count without loading the series into the heap.
+// A series is an append-only file <sensor>.ts of (ms since epoch, value) records in time order, plus a
+// block index <sensor>.idx with the time range, minimum and maximum of every BLOCK_RECORDS records. Both
+// are memory-mapped for queries: the records of a range are found by binary search, min/max buckets take
+// whole blocks from the index and only scan records at the bucket edges, and LTTB picks among those.
+public class PhaseStore {
+
+    private static final String DATA_SUFFIX = ".ts";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int RECORD_SIZE = 12;         // long ms, float value
+    private static final int BLOCK_SIZE = 32;          // long first ms, long last ms, int min record, int max record, float min, float max
+    private static final int BLOCK_RECORDS = 256;
+    private static final int SEGMENT_SHIFT = 20;       // Records per mapping, keeping each below the 2 GB limit of a MappedByteBuffer
+    private static final int LTTB_CANDIDATES = 4;      // Min/max preselected points per LTTB point on long ranges
+
+    public enum Mode {
+        MINMAX, // Lowest and highest value of each time bucket, so peaks survive
+        LTTB;   // Largest-Triangle-Three-Buckets, keeps the visual shape with one point per bucket
+
+        static Mode parse(String mode) {
+            return "lttb".equalsIgnoreCase(mode) ? LTTB : MINMAX;
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, Series> series = new HashMap<>();
+
+    public PhaseStore() {
+        Configs config = Configs.getCfgInstance();
+        Path directory = Paths.get(config.getSnapshot().getHistory().getStoreDirectory());
+        if (!directory.isAbsolute()) {
+            directory = Paths.get(Configs.getLocalParentPath(config.getRepoName())).resolve(directory);
+        }
+        this.directory = directory;
+    }
+
+    // Append every sensor value of the snapshots, in order; called from a single writer thread
+    public void append(List<PhaseSnapshot> snapshots) {
+        Map<String, List<PhaseSnapshot>> bySensor = new HashMap<>();
+        for (PhaseSnapshot snapshot : snapshots) {
+            for (Map.Entry<String, Double> sensor : snapshot.getSensors().entrySet()) {
+                if (sensor.getValue() >= 0) {
+                    bySensor.computeIfAbsent(sensor.getKey(), key -> new ArrayList<>()).add(snapshot);
+                }
+            }
+        }
+        for (Map.Entry<String, List<PhaseSnapshot>> entry : bySensor.entrySet()) {
+            try {
+                Series sensorSeries = series(entry.getKey(), true);
+                ByteBuffer records = ByteBuffer.allocate(entry.getValue().size() * RECORD_SIZE);
+                for (PhaseSnapshot snapshot : entry.getValue()) {
+                    records.putLong(snapshot.getComputedAtMillis()).putFloat(snapshot.getSensors().get(entry.getKey()).floatValue());
+                }
+                records.flip();
+                sensorSeries.append(records);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Values of the sensor between from and to (ms since epoch, inclusive), downsampled to at most the
+    // given number of points. Ranges holding fewer records come back as they are.
+    public Result query(String sensor, long from, long to, int points, Mode mode) throws IOException {
+        Series sensorSeries = series(sensor, false);
+        if (sensorSeries == null || to < from) {
+            return new Result(0, 0);
+        }
+        View view = sensorSeries.view();
+        long lo = view.lowerBound(from, 0, view.count);
+        long hi = view.lowerBound(to == Long.MAX_VALUE ? to : to + 1, lo, view.count);
+        long matched = hi - lo;
+        points = Math.max(points, 3);
+
+        if (matched <= points) {
+            Result result = new Result(matched, (int) matched);
+            for (long i = lo; i < hi; i++) {
+                result.add(view.time(i), view.value(i));
+            }
+            return result;
+        }
+        return mode == Mode.LTTB ? lttb(view, lo, hi, points) : minMax(view, lo, hi, points);
+    }
+
+    // Split the covered time span into points / 2 buckets and keep each bucket's extremes in time order
+    private static Result minMax(View view, long lo, long hi, int points) {
+        int buckets = points / 2;
+        long first = view.time(lo);
+        long span = view.time(hi - 1) - first + 1;
+        Result result = new Result(hi - lo, buckets * 2);
+        long start = lo;
+        long[] extremes = new long[2];
+        for (int b = 0; b < buckets && start < hi; b++) {
+            long end = b == buckets - 1 ? hi : view.lowerBound(first + span * (b + 1) / buckets, start, hi);
+            if (end == start) {
+                continue; // Nothing computed in this bucket
+            }
+            view.extremes(start, end, extremes);
+            long a = Math.min(extremes[0], extremes[1]);
+            long c = Math.max(extremes[0], extremes[1]);
+            result.add(view.time(a), view.value(a));
+            if (c != a) {
+                result.add(view.time(c), view.value(c));
+            }
+            start = end;
+        }
+        return result;
+    }
+
+    // Largest-Triangle-Three-Buckets, keeping the first and last candidate. Long ranges are first reduced to the
+    // min/max of LTTB_CANDIDATES buckets per point through the block index (MinMaxLTTB), so the cost no
+    // longer grows with the number of stored records.
+    private static Result lttb(View view, long lo, long hi, int points) {
+        Result candidates;
+        if (hi - lo <= (long) points * LTTB_CANDIDATES) {
+            candidates = new Result(hi - lo, (int) (hi - lo));
+            for (long i = lo; i < hi; i++) {
+                candidates.add(view.time(i), view.value(i));
+            }
+        } else {
+            candidates = minMax(view, lo, hi, points * LTTB_CANDIDATES);
+        }
+        int n = candidates.size();
+        if (n <= points) {
+            return candidates;
+        }
+        double every = (double) (n - 2) / (points - 2);
+        long base = candidates.getTime(0); // Times relative to the first point keep the areas precise
+        Result result = new Result(hi - lo, points);
+        result.add(candidates.getTime(0), candidates.getValue(0));
+
+        int a = 0;
+        for (int i = 0; i < points - 2; i++) {
+            // Average of the next bucket is the third corner of the triangle
+            int nextStart = (int) ((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) ((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += candidates.getTime(j) - base;
+                avgY += candidates.getValue(j);
+            }
+            avgX /= nextEnd - nextStart;
+            avgY /= nextEnd - nextStart;
+
+            int rangeStart = (int) (i * every) + 1;
+            int rangeEnd = (int) ((i + 1) * every) + 1;
+            double ax = candidates.getTime(a) - base;
+            double ay = candidates.getValue(a);
+            double maxArea = -1;
+            int picked = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (candidates.getValue(j) - ay) - (ax - (candidates.getTime(j) - base)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    picked = j;
+                }
+            }
+            result.add(candidates.getTime(picked), candidates.getValue(picked));
+            a = picked;
+        }
+        result.add(candidates.getTime(n - 1), candidates.getValue(n - 1));
+        return result;
+    }
+
+    private synchronized Series series(String sensor, boolean create) throws IOException {
+        Series sensorSeries = series.get(sensor);
+        if (sensorSeries == null) {
+            Path data = directory.resolve(sensor + DATA_SUFFIX);
+            if (!create && !Files.exists(data)) {
+                return null;
+            }
+            Files.createDirectories(directory);
+            sensorSeries = new Series(data, directory.resolve(sensor + INDEX_SUFFIX));
+            series.put(sensor, sensorSeries);
+        }
+        return sensorSeries;
+    }
+
+    // Downsampled range of one sensor
+    public static final class Result {
+
+        private final long matched;
+        private long[] times;
+        private float[] values;
+        private int size = 0;
+
+        private Result(long matched, int capacity) {
+            this.matched = matched;
+            this.times = new long[capacity];
+            this.values = new float[capacity];
+        }
+
+        private void add(long time, float value) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, Math.max(4, size * 2));
+                values = Arrays.copyOf(values, times.length);
+            }
+            times[size] = time;
+            values[size] = value;
+            size++;
+        }
+
+        // Stored records in the queried range
+        public long getMatched() {
+            return matched;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long getTime(int i) {
+            return times[i];
+        }
+
+        public float getValue(int i) {
+            return values[i];
+        }
+    }
+
+    // Data and block index files of one sensor
+    private static final class Series {
+
+        private final FileChannel data;
+        private final FileChannel index;
+        private final Mapping records;
+        private final Mapping blocks;
+        private volatile long count; // Records visible to queries, published after their blocks are indexed
+        private long lastMillis = Long.MIN_VALUE;
+
+        private Series(Path dataPath, Path indexPath) throws IOException {
+            this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.records = new Mapping(data, RECORD_SIZE);
+            this.blocks = new Mapping(index, BLOCK_SIZE);
+
+            // Drop a record cut off by a crash and index the blocks the index file is missing
+            long count = data.size() / RECORD_SIZE;
+            data.truncate(count * RECORD_SIZE);
+            long indexed = Math.min(index.size() / BLOCK_SIZE, count / BLOCK_RECORDS);
+            index.truncate(indexed * BLOCK_SIZE);
+            View view = new View(records, blocks, count, indexed);
+            for (long block = indexed; block < count / BLOCK_RECORDS; block++) {
+                writeBlock(view, block);
+            }
+            if (count > 0) {
+                lastMillis = view.time(count - 1);
+            }
+            this.count = count;
+        }
+
+        // Append records, keeping the times non-decreasing so the series stays searchable
+        private synchronized void append(ByteBuffer batch) throws IOException {
+            for (int i = 0; i < batch.limit(); i += RECORD_SIZE) {
+                lastMillis = Math.max(lastMillis, batch.getLong(i));
+                batch.putLong(i, lastMillis);
+            }
+            long before = count;
+            long after = before + batch.limit() / RECORD_SIZE;
+            long position = before * RECORD_SIZE;
+            while (batch.hasRemaining()) {
+                position += data.write(batch, position);
+            }
+            View view = new View(records, blocks, after, before / BLOCK_RECORDS);
+            for (long block = before / BLOCK_RECORDS; block < after / BLOCK_RECORDS; block++) {
+                writeBlock(view, block);
+            }
+            count = after;
+        }
+
+        // Summarize a complete block into the index
+        private void writeBlock(View view, long block) throws IOException {
+            long start = block * BLOCK_RECORDS;
+            long min = start;
+            long max = start;
+            for (long i = start + 1; i < start + BLOCK_RECORDS; i++) {
+                float value = view.value(i);
+                if (value < view.value(min)) {
+                    min = i;
+                }
+                if (value > view.value(max)) {
+                    max = i;
+                }
+            }
+            ByteBuffer entry = ByteBuffer.allocate(BLOCK_SIZE);
+            entry.putLong(view.time(start)).putLong(view.time(start + BLOCK_RECORDS - 1));
+            entry.putInt((int) (min - start)).putInt((int) (max - start));
+            entry.putFloat(view.value(min)).putFloat(view.value(max));
+            entry.flip();
+            long position = block * BLOCK_SIZE;
+            while (entry.hasRemaining()) {
+                position += index.write(entry, position);
+            }
+        }
+
+        private View view() throws IOException {
+            long count = this.count;
+            return new View(records, blocks, count, count / BLOCK_RECORDS);
+        }
+    }
+
+    // Read-only mapping of a growing file of fixed-size records. Full segments are mapped once, the last
+    // one is remapped when it has grown.
+    private static final class Mapping {
+
+        private final FileChannel channel;
+        private final int recordSize;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        private long tailRecords = 0;
+
+        private Mapping(FileChannel channel, int recordSize) {
+            this.channel = channel;
+            this.recordSize = recordSize;
+        }
+
+        // Segments covering the first count records
+        private synchronized ByteBuffer[] segments(long count) throws IOException {
+            int segmentCount = (int) ((count + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT);
+            ByteBuffer[] view = new ByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; s++) {
+                long first = (long) s << SEGMENT_SHIFT;
+                long records = Math.min(count - first, 1L << SEGMENT_SHIFT);
+                boolean mapped = s < segments.size() && (s < segments.size() - 1 || tailRecords >= records);
+                if (!mapped) {
+                    MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, first * recordSize, records * recordSize);
+                    if (s < segments.size()) {
+                        segments.set(s, segment);
+                    } else {
+                        segments.add(segment);
+                    }
+                    tailRecords = records;
+                }
+                view[s] = segments.get(s);
+            }
+            return view;
+        }
+    }
+
+    // Consistent view of the first count records of a series and its complete blocks
+    private static final class View {
+
+        private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+        private final ByteBuffer[] records;
+        private final ByteBuffer[] blocks;
+        private final long count;
+
+        private View(Mapping records, Mapping blocks, long count, long blockCount) throws IOException {
+            this.records = records.segments(count);
+            this.blocks = blocks.segments(blockCount);
+            this.count = count;
+        }
+
+        private long time(long i) {
+            return records[(int) (i >>> SEGMENT_SHIFT)].getLong((int) (i & SEGMENT_MASK) * RECORD_SIZE);
+        }
+
+        private float value(long i) {
+            return records[(int) (i >>> SEGMENT_SHIFT)].getFloat((int) (i & SEGMENT_MASK) * RECORD_SIZE + 8);
+        }
+
+        // First record in [from, to) at or after the given time
+        private long lowerBound(long millis, long from, long to) {
+            while (from < to) {
+                long mid = (from + to) >>> 1;
+                if (time(mid) < millis) {
+                    from = mid + 1;
+                } else {
+                    to = mid;
+                }
+            }
+            return from;
+        }
+
+        // Records holding the minimum and maximum of [from, to), using the block index for whole blocks
+        private void extremes(long from, long to, long[] extremes) {
+            long min = from;
+            long max = from;
+            float minValue = value(from);
+            float maxValue = minValue;
+            long i = from;
+            while (i < to) {
+                if (i % BLOCK_RECORDS == 0 && i + BLOCK_RECORDS <= to) {
+                    long block = i / BLOCK_RECORDS;
+                    ByteBuffer segment = blocks[(int) (block >>> SEGMENT_SHIFT)];
+                    int offset = (int) (block & SEGMENT_MASK) * BLOCK_SIZE;
+                    float blockMin = segment.getFloat(offset + 24);
+                    float blockMax = segment.getFloat(offset + 28);
+                    if (blockMin < minValue) {
+                        minValue = blockMin;
+                        min = i + segment.getInt(offset + 16);
+                    }
+                    if (blockMax > maxValue) {
+                        maxValue = blockMax;
+                        max = i + segment.getInt(offset + 20);
+                    }
+                    i += BLOCK_RECORDS;
+                } else {
+                    float value = value(i);
+                    if (value < minValue) {
+                        minValue = value;
+                        min = i;
+                    }
+                    if (value > maxValue) {
+                        maxValue = value;
+                        max = i;
+                    }
+                    i++;
+                }
+            }
+            extremes[0] = min;
+            extremes[1] = max;
+        }
+    }
+}
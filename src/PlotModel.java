@@ -0,0 +1,155 @@
+package gui;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Plotted results of RealTimeGui, kept off the Event Dispatch Thread.
+// The compute thread appends every result to a fixed window per series; frames for the EDT are built from
+// those windows on demand. Windows wider than <max_plot_points> are min/max decimated into buckets so the
+// chart draws a bounded number of points without losing peaks.
+public class PlotModel {
+
+    private final int capacity;
+    private final int maxPoints;
+    private final Map<String, Window> windows = new LinkedHashMap<>();
+    private long x = 0;
+    private long generation = 0; // Bumped by clear() so frames built before it can be told apart
+
+    public PlotModel(int capacity, int maxPoints) {
+        this.capacity = Math.max(1, capacity);
+        this.maxPoints = Math.max(2, maxPoints);
+    }
+
+    // Append one result per series; all series share the x of the tick
+    public synchronized void add(Map<String, Double> values) {
+        x++;
+        for (Map.Entry<String, Double> value : values.entrySet()) {
+            windows.computeIfAbsent(value.getKey(), key -> new Window(capacity)).add(x, value.getValue());
+        }
+    }
+
+    // Forget every series, e.g. after switching sensors
+    public synchronized void clear() {
+        windows.clear();
+        x = 0;
+        generation++;
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    // Copy of the windows, decimated to at most maxPoints points per series
+    public synchronized Frame frame(String label, int yRange) {
+        Frame frame = new Frame(label, yRange, generation);
+        for (Map.Entry<String, Window> window : windows.entrySet()) {
+            frame.series.put(window.getKey(), window.getValue().points(maxPoints));
+        }
+        return frame;
+    }
+
+    // Everything the EDT needs to redraw the chart
+    public static final class Frame {
+
+        private final String label;
+        private final int yRange;
+        private final long generation;
+        private final Map<String, double[][]> series = new LinkedHashMap<>(); // x values, y values
+
+        private Frame(String label, int yRange, long generation) {
+            this.label = label;
+            this.yRange = yRange;
+            this.generation = generation;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public int getYRange() {
+            return yRange;
+        }
+
+        // Generation of the model the frame was built from
+        public long getGeneration() {
+            return generation;
+        }
+
+        public Map<String, double[][]> getSeries() {
+            return series;
+        }
+    }
+
+    // Ring of the most recent points of one series
+    private static final class Window {
+
+        private final long[] xs;
+        private final double[] ys;
+        private int head = 0; // Oldest point
+        private int size = 0;
+
+        private Window(int capacity) {
+            this.xs = new long[capacity];
+            this.ys = new double[capacity];
+        }
+
+        private void add(long x, double y) {
+            int slot = (head + size) % xs.length;
+            xs[slot] = x;
+            ys[slot] = y;
+            if (size < xs.length) {
+                size++;
+            } else {
+                head = (head + 1) % xs.length;
+            }
+        }
+
+        // Points in order, or the lowest and highest of maxPoints / 2 equal buckets when there are more
+        private double[][] points(int maxPoints) {
+            if (size <= maxPoints) {
+                double[][] points = new double[2][size];
+                for (int i = 0; i < size; i++) {
+                    int slot = (head + i) % xs.length;
+                    points[0][i] = xs[slot];
+                    points[1][i] = ys[slot];
+                }
+                return points;
+            }
+            int buckets = maxPoints / 2;
+            double[][] points = new double[2][buckets * 2];
+            int n = 0;
+            for (int b = 0; b < buckets; b++) {
+                int start = (int) ((long) size * b / buckets);
+                int end = (int) ((long) size * (b + 1) / buckets);
+                int min = start;
+                int max = start;
+                for (int i = start + 1; i < end; i++) {
+                    double y = ys[(head + i) % xs.length];
+                    if (y < ys[(head + min) % xs.length]) {
+                        min = i;
+                    }
+                    if (y > ys[(head + max) % xs.length]) {
+                        max = i;
+                    }
+                }
+                // Keep the two extremes in x order, once if they are the same point
+                n = put(points, n, Math.min(min, max));
+                if (min != max) {
+                    n = put(points, n, Math.max(min, max));
+                }
+            }
+            if (n < points[0].length) {
+                points = new double[][] {Arrays.copyOf(points[0], n), Arrays.copyOf(points[1], n)};
+            }
+            return points;
+        }
+
+        private int put(double[][] points, int n, int i) {
+            int slot = (head + i) % xs.length;
+            points[0][n] = xs[slot];
+            points[1][n] = ys[slot];
+            return n + 1;
+        }
+    }
+}
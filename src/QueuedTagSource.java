@@ -0,0 +1,161 @@
+package gui;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+// Common plumbing of the tag sources: reads submitted by the producing thread go through an IngestQueue
+// and are processed (auto-select, TagData.addTag) on consumer threads, so the producer never stalls.
+public abstract class QueuedTagSource implements TagSource {
+
+    // Reads at or below this peak RSSI (dBm) are discarded
+    protected static final double MIN_RSSI = -60;
+
+    protected final TagData tagData; // TagData object to store tag records
+    protected final Configs config;
+    protected final ConfigSnapshot snapshot; // EPC lookup table and EPC-to-sensor mapping from params.xml
+    protected final ConfigSnapshot.ReaderEndpoint endpoint; // Which <impinj> reader this is, also its TagData shard
+    protected final ReaderStats stats;
+
+    // Reads are handed off the producing thread and processed by consumer threads
+    private final IngestQueue ingestQueue;
+    private final List<Thread> consumers = new ArrayList<>();
+    private volatile boolean processing = false;
+    private volatile TagCapture capture = null; // Raw read recording, if <capture> is enabled
+
+    protected QueuedTagSource(TagData tagData, ConfigSnapshot.ReaderEndpoint endpoint) {
+        this.tagData = tagData;
+        this.endpoint = endpoint;
+
+        // Get the Configs object
+        this.config = Configs.getCfgInstance();
+
+        this.snapshot = config.getSnapshot();
+        this.stats = new ReaderStats(endpoint.getName(), snapshot.getEpcTable().size());
+        this.ingestQueue = new IngestQueue(snapshot.getIngestQueueCapacity(), snapshot.getIngestOverflowPolicy());
+    }
+
+    // Hand an accepted read to the processing stage, called on the producing thread. The antenna port is
+    // the one the reader reported, 0 if it didn't.
+    protected void submit(int antenna, int epcId, long timestamp, double channel, double phase, double rssi) {
+        stats.onAccepted(epcId, channel);
+        ingestQueue.offer(antenna, epcId, timestamp, channel, phase, rssi);
+    }
+
+    // Start the threads that drain the ingest queue into TagData
+    protected void startConsumers() {
+        if (snapshot.getCapture().isEnabled() && isCaptured()) {
+            openCapture();
+        }
+        processing = true;
+        for (int i = 0; i < snapshot.getIngestConsumers(); i++) {
+            Thread consumer = new Thread(this::consume, "ingest-" + endpoint.getName() + "-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumers.add(consumer);
+        }
+    }
+
+    // Let the consumer threads flush the queue and wait for them to finish
+    protected void stopConsumers() {
+        processing = false;
+        for (Thread consumer : consumers) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        consumers.clear();
+        System.out.println(endpoint.getName() + " ingest queue: " + ingestQueue.getOffered() + " reads offered, " + ingestQueue.getDropped() + " dropped");
+        closeCapture();
+    }
+
+    // Whether this source's reads are recorded when <capture> is enabled
+    protected boolean isCaptured() {
+        return true;
+    }
+
+    private void openCapture() {
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        Path directory = Paths.get(snapshot.getCapture().getDirectory());
+        if (!directory.isAbsolute()) {
+            directory = Paths.get(Configs.getLocalParentPath(config.getRepoName())).resolve(directory);
+        }
+        Path path = directory.resolve(config.getProjectName() + "_" + endpoint.getName() + "_" + timestamp + ".bin");
+        try {
+            capture = new TagCapture(path, snapshot.getEpcTable(), snapshot.getCapture().getBatchRecords());
+            System.out.println("Capturing " + endpoint.getName() + " to " + path);
+        } catch (IOException e) {
+            System.out.println("Could not open the capture " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void closeCapture() {
+        TagCapture closing = capture;
+        capture = null;
+        if (closing == null) {
+            return;
+        }
+        try {
+            closing.close();
+            System.out.println("Captured " + closing.getRecords() + " reads to " + closing.getPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void consume() {
+        IngestQueue.ReadHandler handler = this::processRead;
+        while (processing) {
+            if (ingestQueue.drain(handler, 256) == 0) {
+                LockSupport.parkNanos(100_000); // Idle, back off briefly
+            }
+        }
+        ingestQueue.drain(handler, Integer.MAX_VALUE);
+    }
+
+    // Processing stage for a single accepted read, runs on a consumer thread
+    protected void processRead(int antenna, int epcId, long timestamp, double channel, double phase, double rssi) {
+        TagCapture capture = this.capture;
+        if (capture != null) {
+            try {
+                capture.append(antenna, epcId, timestamp, channel, phase, rssi);
+            } catch (IOException e) {
+                // Stop recording but keep processing
+                System.out.println("Capture of " + endpoint.getName() + " failed: " + e.getMessage());
+                this.capture = null;
+            }
+        }
+        if (config.getAutoSelect()) {
+            config.setSensorDef(snapshot.getEpcSensor(epcId));
+        }
+        // Add the tag data to the shard of this source and antenna port in the TagData object
+        tagData.addTag(endpoint.getIndex(), antenna, epcId, timestamp, channel, phase, rssi);
+    }
+
+    @Override
+    public String getName() {
+        return endpoint.getName();
+    }
+
+    // Reads offered to the ingest queue and how many of them it had to drop
+    @Override
+    public IngestQueue getIngestQueue() {
+        return ingestQueue;
+    }
+
+    @Override
+    public ReaderStats getStats() {
+        return stats;
+    }
+
+    public ConfigSnapshot.ReaderEndpoint getEndpoint() {
+        return endpoint;
+    }
+}
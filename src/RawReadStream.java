@@ -0,0 +1,105 @@
+package gui;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Packs the reads TagData accepts into binary micro-batches for the raw WebSocket stream.
+// A batch is sealed once it holds <batch_reads> reads or its first read is <max_delay_ms> old, whichever
+// comes first, and handed to the sink. Batches and reads are numbered consecutively so consumers can
+// detect batches dropped on the way. Does nothing while disabled, i.e. while nobody subscribed.
+//
+// Frame layout (big-endian): type 2 (byte), batch sequence (long), sequence of the first read (long),
+// read count (int), then per read: EPC id (int), reader index (byte), antenna port (byte, 0 if not reported),
+// timestamp in microseconds (long), channel in MHz, phase in degrees and peak RSSI in dBm (floats).
+public class RawReadStream implements TagData.ReadListener {
+
+    static final byte READ_BATCH_FRAME = 2;
+    static final int HEADER_SIZE = 1 + 8 + 8 + 4;
+    static final int RECORD_SIZE = 4 + 1 + 1 + 8 + 4 + 4 + 4;
+
+    private final int batchReads;
+    private final long maxDelayMillis;
+    private final Consumer<ByteBuffer> sink;
+    private final ScheduledExecutorService flusher;
+
+    private volatile boolean enabled = false;
+    private ByteBuffer batch;
+    private int count = 0;
+    private long batchStartedMillis = 0;
+    private long nextBatchSequence = 0;
+    private long nextReadSequence = 0;
+
+    public RawReadStream(int batchReads, long maxDelayMillis, Consumer<ByteBuffer> sink) {
+        this.batchReads = Math.max(1, batchReads);
+        this.maxDelayMillis = Math.max(1, maxDelayMillis);
+        this.sink = sink;
+        this.batch = newBatch();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "raw-stream-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, this.maxDelayMillis / 2);
+        flusher.scheduleAtFixedRate(this::sealIfDue, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Start or stop batching; a partial batch is sent when stopping
+    public synchronized void setEnabled(boolean enabled) {
+        if (this.enabled && !enabled && count > 0) {
+            seal();
+        }
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Called on the ingest consumer threads for every accepted read
+    @Override
+    public void onRead(int reader, int antenna, int epcId, long timestamp, double channel, double phase, double rssi) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            if (count == 0) {
+                batchStartedMillis = System.currentTimeMillis();
+            }
+            batch.putInt(epcId).put((byte) reader).put((byte) antenna).putLong(timestamp)
+                    .putFloat((float) channel).putFloat((float) phase).putFloat((float) rssi);
+            if (++count == batchReads) {
+                seal();
+            }
+        }
+    }
+
+    private synchronized void sealIfDue() {
+        if (count > 0 && System.currentTimeMillis() - batchStartedMillis >= maxDelayMillis) {
+            seal();
+        }
+    }
+
+    // Fill in the header and hand the batch to the sink
+    private void seal() {
+        batch.put(0, READ_BATCH_FRAME).putLong(1, nextBatchSequence++).putLong(9, nextReadSequence).putInt(17, count);
+        nextReadSequence += count;
+        batch.flip();
+        ByteBuffer sealed = batch;
+        batch = newBatch();
+        count = 0;
+        sink.accept(sealed);
+    }
+
+    private ByteBuffer newBatch() {
+        ByteBuffer batch = ByteBuffer.allocate(HEADER_SIZE + batchReads * RECORD_SIZE);
+        batch.position(HEADER_SIZE);
+        return batch;
+    }
+
+    public void stop() {
+        flusher.shutdownNow();
+    }
+}
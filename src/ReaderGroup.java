@@ -0,0 +1,152 @@
+package gui;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Runs one tag source per <impinj> entry of params.xml, each on its own thread and feeding its own
+// TagData shard, and periodically logs every source's throughput and health. Sources are Impinj readers,
+// replays of captured sessions when <replay> lists files, or simulated readers when <simulator> is enabled.
+public class ReaderGroup {
+
+    private static final int HEALTH_LOG_SECONDS = 30;
+
+    private final List<TagSource> readers;
+    private final ScheduledExecutorService healthLog;
+    private final TagData tagData;
+    private final EpcTable epcTable;
+
+    public ReaderGroup(TagData tagData) {
+        ConfigSnapshot snapshot = Configs.getCfgInstance().getSnapshot();
+        this.tagData = tagData;
+        this.epcTable = snapshot.getEpcTable();
+        List<TagSource> readers = new ArrayList<>();
+        List<String> replayFiles = snapshot.getReplay().getFiles();
+        if (replayFiles.size() > snapshot.getReaders().size()) {
+            System.out.println("Only the first " + snapshot.getReaders().size() + " replay files have a reader shard to replay into");
+        }
+        for (ConfigSnapshot.ReaderEndpoint endpoint : snapshot.getReaders()) {
+            if (!replayFiles.isEmpty()) {
+                if (endpoint.getIndex() < replayFiles.size()) {
+                    readers.add(new ReplayTagSource(tagData, endpoint, Paths.get(replayFiles.get(endpoint.getIndex()))));
+                }
+            } else if (snapshot.getSimulator().isEnabled()) {
+                readers.add(new SimulatedTagSource(tagData, endpoint));
+            } else {
+                readers.add(new AntennaReader(tagData, endpoint));
+            }
+        }
+        this.readers = Collections.unmodifiableList(readers);
+        this.healthLog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reader-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.get().register(this::collect);
+    }
+
+    // Start every reader on its own thread
+    public void startAll() {
+        for (TagSource reader : readers) {
+            new Thread(reader::startReading, "reader-" + reader.getName()).start();
+        }
+        healthLog.scheduleAtFixedRate(this::logHealth, HEALTH_LOG_SECONDS, HEALTH_LOG_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void stopAll() {
+        healthLog.shutdownNow();
+        for (TagSource reader : readers) {
+            reader.stopReader();
+        }
+    }
+
+    public List<TagSource> getReaders() {
+        return readers;
+    }
+
+    private void logHealth() {
+        for (int i = 0; i < readers.size(); i++) {
+            TagSource reader = readers.get(i);
+            ReaderStats stats = reader.getStats();
+            IngestQueue queue = reader.getIngestQueue();
+            System.out.println(String.format("%s: %s, %.0f reads/s, %d accepted, dropped %d queue full / %d rssi / %d unknown EPC / %d other sensors, last report %d ms ago%s",
+                    stats.getName(), stats.getState(), stats.sampleReadsPerSecond(), stats.getAccepted(),
+                    queue.getDropped(), stats.getDropped(ReaderStats.Drop.RSSI), stats.getDropped(ReaderStats.Drop.UNKNOWN_EPC),
+                    tagData.getFiltered(readerIndex(reader, i)), stats.getMillisSinceLastReport(),
+                    stats.getLastError() != null ? " (" + stats.getLastError() + ")" : ""));
+        }
+    }
+
+    // Reader index of a source in TagData
+    private static int readerIndex(TagSource reader, int position) {
+        return reader instanceof QueuedTagSource ? ((QueuedTagSource) reader).getEndpoint().getIndex() : position;
+    }
+
+    // Per-reader counters for the metrics endpoint
+    private void collect(StringBuilder out) {
+        Metrics.header(out, "sensync_reader_up", "gauge", "Whether the reader is running");
+        for (TagSource reader : readers) {
+            Metrics.sample(out, "sensync_reader_up", readerLabel(reader), reader.getStats().getState() == ReaderStats.State.RUNNING ? 1 : 0);
+        }
+        Metrics.header(out, "sensync_reader_reported_total", "counter", "Tags reported by the reader");
+        for (TagSource reader : readers) {
+            Metrics.sample(out, "sensync_reader_reported_total", readerLabel(reader), reader.getStats().getReported());
+        }
+        Metrics.header(out, "sensync_reader_accepted_total", "counter", "Reads that passed the RSSI and EPC filters");
+        for (TagSource reader : readers) {
+            Metrics.sample(out, "sensync_reader_accepted_total", readerLabel(reader), reader.getStats().getAccepted());
+        }
+        Metrics.header(out, "sensync_reads_dropped_total", "counter", "Reads dropped, by reason");
+        for (int i = 0; i < readers.size(); i++) {
+            TagSource reader = readers.get(i);
+            ReaderStats stats = reader.getStats();
+            String labels = readerLabel(reader) + ",";
+            Metrics.sample(out, "sensync_reads_dropped_total", labels + Metrics.label("reason", "rssi"), stats.getDropped(ReaderStats.Drop.RSSI));
+            Metrics.sample(out, "sensync_reads_dropped_total", labels + Metrics.label("reason", "unknown_epc"), stats.getDropped(ReaderStats.Drop.UNKNOWN_EPC));
+            Metrics.sample(out, "sensync_reads_dropped_total", labels + Metrics.label("reason", "queue_full"), reader.getIngestQueue().getDropped());
+            Metrics.sample(out, "sensync_reads_dropped_total", labels + Metrics.label("reason", "sensor_filter"), tagData.getFiltered(readerIndex(reader, i)));
+        }
+        Metrics.header(out, "sensync_epc_reads_total", "counter", "Accepted reads by EPC");
+        for (TagSource reader : readers) {
+            for (int epcId = 0; epcId < epcTable.size(); epcId++) {
+                long reads = reader.getStats().getEpcReads(epcId);
+                if (reads > 0) {
+                    Metrics.sample(out, "sensync_epc_reads_total", readerLabel(reader) + "," + Metrics.label("epc", epcTable.name(epcId)), reads);
+                }
+            }
+        }
+        Metrics.header(out, "sensync_channel_reads_total", "counter", "Accepted reads by channel in MHz");
+        for (TagSource reader : readers) {
+            double[][] channels = reader.getStats().getChannelReads();
+            for (int i = 0; i < channels[0].length; i++) {
+                String channel = Double.isNaN(channels[0][i]) ? "other" : Double.toString(channels[0][i]);
+                Metrics.sample(out, "sensync_channel_reads_total", readerLabel(reader) + "," + Metrics.label("channel", channel), channels[1][i]);
+            }
+        }
+        Metrics.header(out, "sensync_antenna_reads_total", "counter", "Reported tags by antenna port, 0 when the port isn't reported");
+        for (TagSource reader : readers) {
+            for (int port = 0; port <= ReaderStats.MAX_ANTENNAS; port++) {
+                long reads = reader.getStats().getAntennaReads(port);
+                if (reads > 0) {
+                    Metrics.sample(out, "sensync_antenna_reads_total", readerLabel(reader) + "," + Metrics.label("antenna", Integer.toString(port)), reads);
+                }
+            }
+        }
+        Metrics.header(out, "sensync_ingest_queue_depth", "gauge", "Reads waiting in the ingest queue");
+        for (TagSource reader : readers) {
+            Metrics.sample(out, "sensync_ingest_queue_depth", readerLabel(reader), reader.getIngestQueue().size());
+        }
+        Metrics.header(out, "sensync_ingest_queue_capacity", "gauge", "Capacity of the ingest queue");
+        for (TagSource reader : readers) {
+            Metrics.sample(out, "sensync_ingest_queue_capacity", readerLabel(reader), reader.getIngestQueue().capacity());
+        }
+    }
+
+    private static String readerLabel(TagSource reader) {
+        return Metrics.label("reader", reader.getName());
+    }
+}
@@ -0,0 +1,154 @@
+package gui;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Throughput and health counters of one reader, including accepted reads by EPC, channel and antenna port
+// and filtered reads by reason. Counters are preallocated and bumped without allocating on the reader's own
+// callback and consumer threads; anyone may read them.
+public class ReaderStats {
+
+    public enum State { IDLE, CONNECTING, RUNNING, STOPPED, FAILED }
+
+    // Why a reported tag was filtered before the ingest queue
+    public enum Drop { RSSI, UNKNOWN_EPC }
+
+    static final int MAX_ANTENNAS = 32;   // Antenna ports counted individually, higher ones count as port 0
+    static final int MAX_CHANNELS = 256;  // Distinct channels counted individually, the rest as "other"
+
+    private final String name;
+    private volatile State state = State.IDLE;
+    private volatile String lastError = null;
+
+    private final AtomicLong reported = new AtomicLong(); // Tags reported by the reader
+    private final AtomicLong accepted = new AtomicLong(); // Tags that passed the RSSI and EPC filters
+    private volatile long lastReportMillis = 0;
+    private final AtomicLongArray drops = new AtomicLongArray(Drop.values().length);
+    private final AtomicLongArray epcReads;      // Accepted reads by EPC id
+    private final AtomicLongArray antennaReads = new AtomicLongArray(MAX_ANTENNAS + 1);
+    private final AtomicLongArray channelKeys = new AtomicLongArray(MAX_CHANNELS); // Open addressing, EMPTY_CHANNEL if free
+    private final AtomicLongArray channelReads = new AtomicLongArray(MAX_CHANNELS + 1); // Last slot is "other"
+    private static final long EMPTY_CHANNEL = Long.MIN_VALUE;
+
+    // Counts at the previous rate sample, to turn the counters into reads/s
+    private long sampledReported = 0;
+    private long sampledMillis = System.currentTimeMillis();
+
+    public ReaderStats(String name, int epcCount) {
+        this.name = name;
+        this.epcReads = new AtomicLongArray(Math.max(1, epcCount));
+        for (int i = 0; i < MAX_CHANNELS; i++) {
+            channelKeys.set(i, EMPTY_CHANNEL);
+        }
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    void fail(String error) {
+        this.lastError = error;
+        this.state = State.FAILED;
+    }
+
+    void onReported() {
+        reported.incrementAndGet();
+        lastReportMillis = System.currentTimeMillis();
+    }
+
+    // A read of a known EPC passed the filters
+    void onAccepted(int epcId, double channel) {
+        accepted.incrementAndGet();
+        if (epcId >= 0 && epcId < epcReads.length()) {
+            epcReads.incrementAndGet(epcId);
+        }
+        channelReads.incrementAndGet(channelSlot(channel));
+    }
+
+    void onDropped(Drop reason) {
+        drops.incrementAndGet(reason.ordinal());
+    }
+
+    // Antenna port a reported tag was seen on, if the reader reports it
+    void onAntenna(int port) {
+        antennaReads.incrementAndGet(port > 0 && port <= MAX_ANTENNAS ? port : 0);
+    }
+
+    // Slot of a channel, claiming a free one the first time it is seen
+    private int channelSlot(double channel) {
+        long key = Double.doubleToLongBits(channel);
+        int slot = (int) ((key ^ (key >>> 29)) & (MAX_CHANNELS - 1));
+        for (int probe = 0; probe < MAX_CHANNELS; probe++, slot = (slot + 1) & (MAX_CHANNELS - 1)) {
+            long current = channelKeys.get(slot);
+            if (current == key || (current == EMPTY_CHANNEL && (channelKeys.compareAndSet(slot, EMPTY_CHANNEL, key)
+                    || channelKeys.get(slot) == key))) {
+                return slot;
+            }
+        }
+        return MAX_CHANNELS;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public long getReported() {
+        return reported.get();
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getDropped(Drop reason) {
+        return drops.get(reason.ordinal());
+    }
+
+    public long getEpcReads(int epcId) {
+        return epcId < epcReads.length() ? epcReads.get(epcId) : 0;
+    }
+
+    // Reads seen on an antenna port, 0 for reads without a known port
+    public long getAntennaReads(int port) {
+        return antennaReads.get(port);
+    }
+
+    // Counted channels in MHz, NaN standing for the ones beyond MAX_CHANNELS, and their accepted reads
+    public double[][] getChannelReads() {
+        int n = 0;
+        double[][] reads = new double[2][MAX_CHANNELS + 1];
+        for (int slot = 0; slot <= MAX_CHANNELS; slot++) {
+            long count = channelReads.get(slot);
+            if (count > 0) {
+                reads[0][n] = slot < MAX_CHANNELS ? Double.longBitsToDouble(channelKeys.get(slot)) : Double.NaN;
+                reads[1][n] = count;
+                n++;
+            }
+        }
+        return new double[][] {Arrays.copyOf(reads[0], n), Arrays.copyOf(reads[1], n)};
+    }
+
+    // Milliseconds since the reader last reported a tag, -1 if it never did
+    public long getMillisSinceLastReport() {
+        return lastReportMillis == 0 ? -1 : System.currentTimeMillis() - lastReportMillis;
+    }
+
+    // Reported tags per second since the previous call
+    public synchronized double sampleReadsPerSecond() {
+        long now = System.currentTimeMillis();
+        long total = reported.get();
+        double rate = now > sampledMillis ? (total - sampledReported) * 1000.0 / (now - sampledMillis) : 0;
+        sampledReported = total;
+        sampledMillis = now;
+        return rate;
+    }
+}
@@ -4,10 +4,14 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import javax.swing.*;
 
 import com.formdev.flatlaf.FlatDarkLaf;
@@ -19,24 +23,37 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
+// Results are collected into a PlotModel on the compute thread. Swing components, the chart included, are
+// only touched on the Event Dispatch Thread: at most one decimated frame waits for it at a time, and each
+// frame redraws every series with a single chart notification.
 public class RealTimeGui extends JFrame {
 
-    private XYSeries series;
+    private XYSeriesCollection dataset;
+    private Map<String, XYSeries> plotted = new HashMap<>(); // EDT only
     private JFreeChart chart;
+    private JLabel avgLabel;
     private TagData tagData;
-    private Timer timer;
-    private int visualXLength = 200;
-    private int xData = 0;
+    private ComputeScheduler scheduler;
+    private Consumer<PhaseSnapshot> subscriber;
     private Configs config;
     private int yRange = 120; 
     private JPanel buttonPanel;
 
-    public RealTimeGui(TagData tagData) {
+    private final PlotModel model;
+    private final boolean plotAllSensors;
+    private final AtomicBoolean framePending = new AtomicBoolean(false);
+    private volatile String label = "\u03C6: N/A";
+    private volatile String plottedSensor = null; // Sensor the single plot was switched to, null for any (auto)
+
+    public RealTimeGui(TagData tagData, ComputeScheduler scheduler) {
         this.config = Configs.getCfgInstance();
         this.tagData = tagData;
-        this.series = new XYSeries("");
+        this.scheduler = scheduler;
+        ConfigSnapshot.GuiConfig gui = config.getSnapshot().getGui();
+        this.model = new PlotModel(gui.getVisiblePoints(), gui.getMaxPlotPoints());
+        this.plotAllSensors = gui.isPlotAllSensors() && config.isMultiSensor();
 
-        XYSeriesCollection dataset = new XYSeriesCollection(series);
+        this.dataset = new XYSeriesCollection();
         this.chart = ChartFactory.createXYLineChart(
                 "ZenseTag: Real-Time Sensing Platform", 
                 "Time",                       
@@ -54,10 +71,11 @@ public class RealTimeGui extends JFrame {
         XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer();
         renderer.setSeriesPaint(0, Color.WHITE);
         // Remove the square shapes denoting the points
-        renderer.setSeriesShapesVisible(0, false);
+        renderer.setDefaultShapesVisible(false);
         // Set a thicker line
         float lineThickness = 5.0f;  // Adjust this value to change the line thickness
-        renderer.setSeriesStroke(0, new BasicStroke(lineThickness));
+        renderer.setAutoPopulateSeriesStroke(false);
+        renderer.setDefaultStroke(new BasicStroke(plotAllSensors ? lineThickness / 2 : lineThickness));
 
         plot.setRenderer(renderer);
 
@@ -69,7 +87,7 @@ public class RealTimeGui extends JFrame {
         chartPanel.setBackground(new Color(38, 50, 56));
         add(chartPanel, BorderLayout.CENTER);
 
-        JLabel avgLabel = new JLabel("\u03C6: N/A");
+        avgLabel = new JLabel(label);
         avgLabel.setForeground(new Color(176, 190, 197));
         avgLabel.setHorizontalAlignment(SwingConstants.CENTER);
         avgLabel.setFont(new Font("Segoe UI", Font.PLAIN, 16));
@@ -87,18 +105,14 @@ public class RealTimeGui extends JFrame {
             @Override
             public void windowClosing(WindowEvent e) {
                 tagData.saveAllPhaseDifferences();
-                stop();  // Stop the timer as well
+                stop();  // Stop receiving results as well
                 System.out.println("Data saved and resources released.");
             }
         });
 
-        this.timer = new Timer();
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                updatePlot(avgLabel);
-            }
-        }, 100, 50);
+        // Plot every result the scheduler computes
+        this.subscriber = this::updatePlot;
+        scheduler.subscribe(subscriber);
     }
 
     private void createButtonPanel() {
@@ -121,23 +135,38 @@ public class RealTimeGui extends JFrame {
     private void switchSensor(String sensorName) {
         if ("auto".equalsIgnoreCase(sensorName)) {
             config.setAutoSelect(true);
-            refreshXYPlot(true);
-            return;
+        } else {
+            config.setAutoSelect(false);
+            config.setSensorDef(sensorName);
+        }
+        if (!plotAllSensors) {
+            // Results of the previous sensor still in flight are ignored, and frames built from them dropped
+            plottedSensor = "auto".equalsIgnoreCase(sensorName) ? null : sensorName;
+            model.clear();
+            plotted.clear();
+            dataset.removeAllSeries();
         }
-        config.setAutoSelect(false);
-        config.setSensorDef(sensorName);
-        refreshXYPlot(true);
+        refreshXYPlot(yRange());
     }
     
-    private void refreshXYPlot(Boolean reset) {
-        this.yRange = (int) config.getSensorConfig(config.getSensorDef()).get("y_range");
-        XYPlot plot = chart.getXYPlot();
-        plot.getRangeAxis().setRange(0, yRange);
-        if (reset) {
-            series.clear();
-            xData = 0;
+    private void refreshXYPlot(int yRange) {
+        if (yRange != this.yRange) {
+            this.yRange = yRange;
+            chart.getXYPlot().getRangeAxis().setRange(0, yRange);
         }
     }
+
+    // Range of the selected sensor, or the widest one when all are plotted
+    private int yRange() {
+        if (!plotAllSensors) {
+            return config.getActiveSensor().getYRange();
+        }
+        int yRange = 0;
+        for (ConfigSnapshot.SensorConfig sensor : config.getSnapshot().getSensors().values()) {
+            yRange = Math.max(yRange, sensor.getYRange());
+        }
+        return yRange;
+    }
     
     private String toTitleCase(String input) {
         if (input == null || input.isEmpty()) {
@@ -146,40 +175,95 @@ public class RealTimeGui extends JFrame {
         return input.substring(0, 1).toUpperCase() + input.substring(1).toLowerCase();
     }
     
-    private void updatePlot(JLabel avgLabel) {
-        double avgPhaseDiff = tagData.calculateAvgPhaseDifference();
-        if (avgPhaseDiff >= 0) {
-            xData++;
-            series.add(xData, avgPhaseDiff);
-            if (series.getItemCount() > visualXLength) {
-                series.remove(0);
+    // Scheduler subscriber, runs on the compute thread and never touches Swing
+    private void updatePlot(PhaseSnapshot snapshot) {
+        double avgPhaseDiff = snapshot.getAvgPhaseDiff();
+        if (plotAllSensors) {
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (Map.Entry<String, Double> sensor : snapshot.getSensors().entrySet()) {
+                if (sensor.getValue() >= 0) {
+                    values.put(sensor.getKey(), sensor.getValue());
+                }
             }
-            avgLabel.setText(String.format("Sensor: " + toTitleCase(config.getSensorDef()) + " || \u03C6: %.2f", avgPhaseDiff));
+            if (!values.isEmpty()) {
+                model.add(values);
+            }
+        } else if (snapshot.hasValue() && (plottedSensor == null || plottedSensor.equals(snapshot.getSensorDef()))) {
+            model.add(Collections.singletonMap("", avgPhaseDiff));
+        }
+        if (snapshot.hasValue()) {
+            label = String.format("Sensor: " + toTitleCase(snapshot.getSensorDef()) + " || \u03C6: %.2f", avgPhaseDiff);
         }
+
+        // Only one frame waits for the EDT; results arriving meanwhile are drawn with the next one
+        if (framePending.compareAndSet(false, true)) {
+            PlotModel.Frame frame = model.frame(label, yRange());
+            SwingUtilities.invokeLater(() -> render(frame));
+        }
+    }
+
+    // Replace the plotted points with the frame's, notifying the chart once
+    private void render(PlotModel.Frame frame) {
+        framePending.set(false);
+        if (frame.getGeneration() != model.getGeneration()) {
+            return; // Built before a sensor switch cleared the model; the next result draws a fresh one
+        }
+        chart.setNotify(false);
         try {
-            refreshXYPlot(false);
-        } 
-        catch (Exception e) {}
+            for (Map.Entry<String, double[][]> points : frame.getSeries().entrySet()) {
+                XYSeries series = plotted.get(points.getKey());
+                if (series == null) {
+                    series = new XYSeries(points.getKey(), false, true); // Points arrive in order
+                    plotted.put(points.getKey(), series);
+                    dataset.addSeries(series);
+                }
+                series.setNotify(false);
+                series.clear();
+                double[] xs = points.getValue()[0];
+                double[] ys = points.getValue()[1];
+                for (int i = 0; i < xs.length; i++) {
+                    series.add(xs[i], ys[i], false);
+                }
+                series.setNotify(true);
+            }
+            // Drop series the frame no longer has, e.g. after switching sensors
+            for (Iterator<Map.Entry<String, XYSeries>> it = plotted.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, XYSeries> series = it.next();
+                if (!frame.getSeries().containsKey(series.getKey())) {
+                    dataset.removeSeries(series.getValue());
+                    it.remove();
+                }
+            }
+            refreshXYPlot(frame.getYRange());
+            avgLabel.setText(frame.getLabel());
+        } finally {
+            chart.setNotify(true);
+        }
     }
 
     public void stop() {
-        if (timer != null) {
-            timer.cancel();
+        if (subscriber != null) {
+            scheduler.unsubscribe(subscriber);
         }
     }
 
     public static void main(String[] args) {
         FlatDarkLaf.setup();
-        SwingUtilities.invokeLater(() -> {
-            TagData tagData = new TagData();
-            AntennaReader antennaReader = new AntennaReader(tagData);
-            new Thread(antennaReader::startReading).start();
-            try {
-                Thread.sleep(2500);
-                new RealTimeGui(tagData);
-            } catch (Exception e) {
-                // Do nothing
-            }
-        });
+        Metrics.get().start(Configs.getCfgInstance().getSnapshot().getMetrics());
+        TagData tagData = new TagData();
+        ReaderGroup readers = new ReaderGroup(tagData);
+        readers.startAll();
+        ComputeScheduler scheduler = new ComputeScheduler(tagData);
+        if (Configs.getCfgInstance().isStoreData()) {
+            new PhaseHistoryWriter(new PhaseStore()).start(scheduler);
+        }
+        try {
+            // Let the readers warm up off the EDT, then build the window on it
+            Thread.sleep(2500);
+            SwingUtilities.invokeAndWait(() -> new RealTimeGui(tagData, scheduler));
+            scheduler.start();
+        } catch (Exception e) {
+            // Do nothing
+        }
     }
 }
\ No newline at end of file
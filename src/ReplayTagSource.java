@@ -0,0 +1,139 @@
+package gui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+// Tag source that plays back a TagCapture recording.
+// The file is memory-mapped and its records are fed to TagData either paced by their recorded timestamps
+// (optionally sped up) through the ingest queue, or as fast as possible straight into the processing stage.
+// Captured EPC ids are resolved by name against the current params.xml; EPCs it doesn't know are skipped.
+// Version 1 captures carry no antenna port and replay as port 0.
+public class ReplayTagSource extends QueuedTagSource {
+
+    private final Path path;
+    private final boolean realtime;
+    private final double speed;
+    private volatile boolean running = false;
+    private int recordSize = TagCapture.RECORD_SIZE; // Of the capture being replayed
+
+    public ReplayTagSource(TagData tagData, ConfigSnapshot.ReaderEndpoint endpoint, Path path) {
+        super(tagData, endpoint);
+        this.path = path;
+        this.realtime = snapshot.getReplay().isRealtime();
+        this.speed = snapshot.getReplay().getSpeed() > 0 ? snapshot.getReplay().getSpeed() : 1.0;
+    }
+
+    // Replay the file once, then stop
+    @Override
+    public void startReading() {
+        System.out.println("Replaying " + path + " into " + getName() + (realtime ? " at " + speed + "x" : " as fast as possible"));
+        running = true;
+        startConsumers();
+        stats.setState(ReaderStats.State.RUNNING);
+
+        long replayed = 0;
+        long startNanos = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+            int[] epcIds = readHeader(header);
+            long dataStart = header.position();
+            long recordCount = (channel.size() - dataStart) / recordSize; // A torn last record is ignored
+            int antennaSize = recordSize - TagCapture.V1_RECORD_SIZE; // 0 for version 1
+
+            // Records mapped at a time, keeping each mapping below the 2 GB limit of a MappedByteBuffer
+            long recordsPerMapping = Integer.MAX_VALUE / recordSize;
+            long firstTimestamp = Long.MIN_VALUE;
+            for (long first = 0; first < recordCount && running; first += recordsPerMapping) {
+                long count = Math.min(recordsPerMapping, recordCount - first);
+                MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataStart + first * recordSize, count * recordSize);
+
+                for (int i = 0; i < count && running; i++) {
+                    int offset = i * recordSize;
+                    int capturedId = records.getInt(offset);
+                    int antenna = antennaSize > 0 ? records.getShort(offset + 4) : 0;
+                    offset += antennaSize;
+                    long timestamp = records.getLong(offset + 4);
+                    double ch = records.getDouble(offset + 12);
+                    double phase = records.getDouble(offset + 20);
+                    double rssi = records.getDouble(offset + 28);
+                    stats.onReported();
+                    if (antenna > 0) {
+                        stats.onAntenna(antenna);
+                    }
+
+                    int epcId = capturedId >= 0 && capturedId < epcIds.length ? epcIds[capturedId] : -1;
+                    if (epcId < 0) {
+                        continue;
+                    }
+                    if (realtime) {
+                        if (firstTimestamp == Long.MIN_VALUE) {
+                            firstTimestamp = timestamp;
+                        }
+                        // Wait until the read is due relative to the first one
+                        long dueNanos = startNanos + (long) ((timestamp - firstTimestamp) * 1000 / speed);
+                        long waitNanos = dueNanos - System.nanoTime();
+                        if (waitNanos > 0) {
+                            LockSupport.parkNanos(waitNanos);
+                        }
+                        submit(antenna, epcId, timestamp, ch, phase, rssi);
+                    } else {
+                        stats.onAccepted(epcId, ch);
+                        processRead(antenna, epcId, timestamp, ch, phase, rssi);
+                    }
+                    replayed++;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error while replaying " + path + ": " + e.getMessage());
+            stats.fail(e.getMessage());
+        } finally {
+            stopConsumers();
+            if (stats.getState() != ReaderStats.State.FAILED) {
+                stats.setState(ReaderStats.State.STOPPED);
+            }
+        }
+
+        long millis = Math.max(1, (System.nanoTime() - startNanos) / 1_000_000);
+        System.out.println(String.format("Replayed %d reads of %s in %d ms (%.0f reads/s)", replayed, path, millis, replayed * 1000.0 / millis));
+    }
+
+    // Parse the capture header and map every captured EPC id to its id in the current EPC table
+    private int[] readHeader(ByteBuffer header) throws IOException {
+        if (header.getInt() != TagCapture.MAGIC) {
+            throw new IOException("not a tag capture");
+        }
+        short version = header.getShort();
+        short recordSize = header.getShort();
+        if (!(version == TagCapture.VERSION && recordSize == TagCapture.RECORD_SIZE)
+                && !(version == 1 && recordSize == TagCapture.V1_RECORD_SIZE)) {
+            throw new IOException("unsupported capture version " + version);
+        }
+        this.recordSize = recordSize;
+        EpcTable epcTable = snapshot.getEpcTable();
+        int[] epcIds = new int[header.getInt()];
+        for (int id = 0; id < epcIds.length; id++) {
+            byte[] name = new byte[header.getShort()];
+            header.get(name);
+            epcIds[id] = epcTable.find(new String(name, StandardCharsets.UTF_8));
+        }
+        return epcIds;
+    }
+
+    @Override
+    public void stopReader() {
+        running = false;
+    }
+
+    // Captures are replayed, not recorded again
+    @Override
+    protected boolean isCaptured() {
+        return false;
+    }
+}
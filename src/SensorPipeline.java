@@ -0,0 +1,416 @@
+package gui;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Buffer and phase-difference pipeline of a single <sensor>.
+// Holds the sensor's reads in a ring buffer, the per-(EPC, channel) index of its window and the
+// streaming engine, all guarded by the ring buffer's lock. TagData keeps one pipeline per sensor and shard.
+public class SensorPipeline {
+
+    // Per-thread copies of the window's phase sequences, so DTW can run without holding the lock
+    private static final ThreadLocal<DtwScratch> DTW_SCRATCH = ThreadLocal.withInitial(DtwScratch::new);
+
+    // DTW cells below which the channels are aligned sequentially rather than forked
+    private static final long PARALLEL_DTW_CELLS = 1 << 15;
+
+    private final ConfigSnapshot.SensorConfig sensor;
+    private final EpcTable epcTable;
+
+    private final TagRingBuffer tagRecords;
+    private final PhaseIndex phaseIndex = new PhaseIndex(); // Per-(EPC, channel) phases of the current window
+    private final PhaseFilter phaseFilter;                  // Per-(EPC, channel) filter of the phases entering it
+    private final StreamingPhaseDiff streamingDiff;         // Running phase difference sums of the current window
+    private final long windowMicros;                        // Window length in reader time
+    private long windowStart = 0;                           // Sequence of the oldest read in the window
+    private long windowEndMicros = Long.MIN_VALUE;          // Newest reader timestamp seen
+    private final int dtwBand;                              // Sakoe-Chiba band half width, 0 for none
+    private final boolean bulkKernel;                       // Matched pass over PhaseDiffKernel's bulk loop
+
+    private final Metrics.Histogram phaseDiffLatency = new Metrics.Histogram(); // calculateAvgPhaseDifference
+    private final Metrics.Histogram dtwLatency = new Metrics.Histogram();       // DTW alignment of the window
+
+    public SensorPipeline(ConfigSnapshot.SensorConfig sensor, EpcTable epcTable, int bufferSize, int dtwBand,
+                          boolean bulkKernel) {
+        this.sensor = sensor;
+        this.epcTable = epcTable;
+        this.dtwBand = dtwBand;
+        this.bulkKernel = bulkKernel;
+        this.phaseFilter = new PhaseFilter(sensor.getFilter());
+
+        // The window holds the reads of the last <window> seconds of reader time, whatever the read rate.
+        // It can't reach further back than the buffered history.
+        this.windowMicros = (long) (sensor.getWindow() * 1_000_000);
+
+        this.tagRecords = new TagRingBuffer(bufferSize);
+        this.streamingDiff = new StreamingPhaseDiff(bufferSize);
+        if (sensor.getPairCount() == 1) {
+            // The running sums follow a sensor's only pair; sensors measuring several share one matched pass
+            streamingDiff.reset(sensor.getEpcId(sensor.getPairPosition(0, 0)), sensor.getEpcId(sensor.getPairPosition(0, 1)));
+        }
+    }
+
+    public String getSensorName() {
+        return sensor.getName();
+    }
+
+    public ConfigSnapshot.SensorConfig getSensor() {
+        return sensor;
+    }
+
+    // Whether reads of this EPC belong to the sensor
+    public boolean accepts(int epcId) {
+        return sensor.containsEpcId(epcId);
+    }
+
+    // Add a read of one of the sensor's EPCs, timestamped in reader microseconds
+    public void add(int epcId, long timestamp, double channel, double phase, double rssi) {
+        synchronized (tagRecords) {
+            // Reads older than the window leave the per-channel index, oldest first. The window is measured
+            // from the newest timestamp so a late read can't move it back.
+            windowEndMicros = Math.max(windowEndMicros, timestamp);
+            long cutoff = windowEndMicros - windowMicros;
+            windowStart = Math.max(windowStart, tagRecords.firstSequence()); // Cleared reads already left
+            while (windowStart < tagRecords.nextSequence() && tagRecords.timestamp(windowStart) < cutoff) {
+                leave(windowStart++);
+            }
+            // A full buffer is about to overwrite its oldest read, which leaves before it is lost
+            if (tagRecords.size() == tagRecords.capacity() && windowStart == tagRecords.firstSequence()) {
+                leave(windowStart++);
+            }
+
+            // Appending overwrites the oldest record once the buffer is full (FIFO)
+            long seq = tagRecords.append(epcId, timestamp, channel, phase, rssi);
+            int channelId = phaseIndex.channelId(channel);
+            // The window sees filtered phases, the ring buffer keeps the read as reported
+            double filtered = phaseFilter.apply(epcId, channelId, phase);
+            phaseIndex.add(epcId, channelId, filtered);
+            streamingDiff.enter(seq, epcId, channelId, filtered);
+        }
+    }
+
+    private void leave(long seq) {
+        phaseIndex.evict(tagRecords.epcId(seq), phaseIndex.channelId(tagRecords.channel(seq)));
+        streamingDiff.leave(seq);
+    }
+
+    // Absolute phase difference in degrees, folding the 360 and 180 degree ambiguities of the reader
+    static double wrappedPhaseDiff(double phase1, double phase2) {
+        double diff = Math.abs(phase1 - phase2);
+        if (diff > 270) {
+            diff = Math.abs(diff - 360);
+        } else if (diff > 135) {
+            diff = Math.abs(diff - 180);
+        }
+        return diff;
+    }
+
+    // Calculate the average phase difference across all channels using banded DTW (DtwKernel) or phase matching, the mean
+    // over the sensor's EPC pairs. Returns -1000 if there isn't enough data.
+    public double calculateAvgPhaseDifference(boolean isDtw, boolean isStreaming) {
+        double[] pairs = calculatePairPhaseDifferences(isDtw, isStreaming);
+        return pairs != null ? average(pairs) : -1000;
+    }
+
+    // Calculate the phase difference of every EPC pair of the sensor, in the order of its <pairs>; NaN for pairs
+    // without reads on a shared channel. Returns null if there isn't enough data.
+    public double[] calculatePairPhaseDifferences(boolean isDtw, boolean isStreaming) {
+        // Ensure there are enough records to calculate
+        if (size() < 2) {
+            return null;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            return calculate(isDtw, isStreaming);
+        } finally {
+            phaseDiffLatency.recordSince(startNanos);
+        }
+    }
+
+    // Mean over the pairs that have a value, 0 if none has
+    static double average(double[] pairs) {
+        double sum = 0;
+        int count = 0;
+        for (double pair : pairs) {
+            if (!Double.isNaN(pair)) {
+                sum += pair;
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+    private double[] calculate(boolean isDtw, boolean isStreaming) {
+        try {
+            int pairCount = sensor.getPairCount();
+            if (pairCount == 0) {
+                throw new IllegalArgumentException("At least two EPCs are required to calculate phase differences.");
+            }
+            double[] results = new double[pairCount];
+
+            if (!isDtw && isStreaming && pairCount == 1) {
+                // The running sums are kept up to date on insert, no need to revisit the window
+                synchronized (tagRecords) {
+                    results[0] = streamingDiff.matches() > 0 ? streamingDiff.average() : Double.NaN;
+                    return results;
+                }
+            }
+
+            // Every pair is matched in the same pass over the channels, each EPC's phases looked up once
+            double[] sums = new double[pairCount];
+            int[] matches = new int[pairCount];
+            PhaseIndex.PhaseSeries[] series = new PhaseIndex.PhaseSeries[sensor.getEpcs().size()];
+            DtwScratch dtwPairs = DTW_SCRATCH.get();
+            dtwPairs.clear();
+
+            synchronized (tagRecords) {
+                for (int channelId = 0; channelId < phaseIndex.channelCount(); channelId++) {
+                    for (int i = 0; i < series.length; i++) {
+                        series[i] = phaseIndex.series(sensor.getEpcId(i), channelId);
+                    }
+                    // Iterate over the pairs with both EPCs present on the channel
+                    for (int pair = 0; pair < pairCount; pair++) {
+                        PhaseIndex.PhaseSeries phases1 = series[sensor.getPairPosition(pair, 0)];
+                        PhaseIndex.PhaseSeries phases2 = series[sensor.getPairPosition(pair, 1)];
+                        if (phases1 == null || phases2 == null || phases1.size() == 0 || phases2.size() == 0) {
+                            continue;
+                        }
+
+                        if (isDtw) {
+                            // Copy the sequences so DTW can run without holding the lock
+                            dtwPairs.add(pair, phases1, phases2);
+                        }
+                        else {
+                            // Pair phases in arrival order up to the shorter sequence
+                            int targetLength = Math.min(phases1.size(), phases2.size());
+                            sums[pair] += bulkKernel ? PhaseDiffKernel.sum(phases1, phases2, targetLength)
+                                    : PhaseDiffKernel.scalarSum(phases1, phases2, targetLength);
+                            matches[pair] += targetLength;
+                        }
+                    }
+                }
+            }
+
+            // Align the two phase sequences of each shared channel and sum the differences along the path.
+            // Channels are aligned in parallel when there is enough work; the per-channel results are then
+            // summed in channel order so the result doesn't depend on scheduling.
+            long dtwStartNanos = System.nanoTime();
+            if (ForkJoinPool.getCommonPoolParallelism() > 1 && dtwPairs.pairs > 1
+                    && DtwTask.cells(dtwPairs, dtwBand, 0, dtwPairs.pairs) >= PARALLEL_DTW_CELLS) {
+                ForkJoinPool.commonPool().invoke(new DtwTask(dtwPairs, dtwBand, 0, dtwPairs.pairs));
+            } else {
+                DtwTask.align(dtwPairs, dtwBand, 0, dtwPairs.pairs);
+            }
+            if (isDtw) {
+                dtwLatency.recordSince(dtwStartNanos);
+            }
+            for (int aligned = 0; aligned < dtwPairs.pairs; aligned++) {
+                sums[dtwPairs.owners[aligned]] += dtwPairs.sums[aligned];
+                matches[dtwPairs.owners[aligned]] += dtwPairs.pathLengths[aligned];
+            }
+
+            // Average phase difference of each pair across all channels
+            for (int pair = 0; pair < pairCount; pair++) {
+                results[pair] = matches[pair] > 0 ? sums[pair] / matches[pair] : Double.NaN;
+            }
+            return results;
+        } catch (Exception e) {
+            // Do nothing
+            return null;
+        }
+    }
+
+    // Clear all stored tag records
+    public void clear() {
+        synchronized (tagRecords) {
+            tagRecords.clear();
+            windowEndMicros = Long.MIN_VALUE; // Reads replayed from an earlier time start a new window
+            phaseIndex.clear();
+            phaseFilter.clear();
+            streamingDiff.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (tagRecords) {
+            return tagRecords.size();
+        }
+    }
+
+    public int capacity() {
+        return tagRecords.capacity();
+    }
+
+    // Reads currently inside the time window
+    public int windowSize() {
+        synchronized (tagRecords) {
+            return (int) (tagRecords.nextSequence() - Math.max(windowStart, tagRecords.firstSequence()));
+        }
+    }
+
+    // The buffered records with reader timestamps in [fromMicros, toMicros), found by binary search.
+    // The returned list is a read-only view over the ring buffer like getLastNTags.
+    public List<Map<String, Object>> getTagsBetween(long fromMicros, long toMicros) {
+        synchronized (tagRecords) {
+            long start = tagRecords.lowerBound(fromMicros, tagRecords.firstSequence());
+            long end = Math.max(start, tagRecords.lowerBound(toMicros, start));
+            return new TagRecordView(start, end);
+        }
+    }
+
+    // Phases the sensor's Hampel filter replaced by the median
+    public long getFilterReplaced() {
+        synchronized (tagRecords) {
+            return phaseFilter.getReplaced();
+        }
+    }
+
+    public Metrics.Histogram getPhaseDiffLatency() {
+        return phaseDiffLatency;
+    }
+
+    public Metrics.Histogram getDtwLatency() {
+        return dtwLatency;
+    }
+
+    // Get the last N tag records, or all records if fewer are available.
+    // The returned list is a read-only view over the ring buffer; records are only materialized when accessed.
+    public List<Map<String, Object>> getLastNTags(int N) {
+        synchronized (tagRecords) {
+            long end = tagRecords.nextSequence();
+            long start = Math.max(tagRecords.firstSequence(), end - Math.max(N, 0));
+            return new TagRecordView(start, end);
+        }
+    }
+
+    // Phase sequence pairs packed into one growable array: pair p spans phases[bounds[4p], +bounds[4p+1])
+    // and phases[bounds[4p+2], +bounds[4p+3]) and belongs to the sensor's EPC pair owners[p].
+    // sums and pathLengths receive each pair's alignment.
+    private static class DtwScratch {
+        double[] phases = new double[1024];
+        int[] bounds = new int[64];
+        int[] owners = new int[16];
+        double[] sums = new double[16];
+        int[] pathLengths = new int[16];
+        int pairs = 0;
+        int used = 0;
+
+        void clear() {
+            pairs = 0;
+            used = 0;
+        }
+
+        void add(int owner, PhaseIndex.PhaseSeries series1, PhaseIndex.PhaseSeries series2) {
+            if (phases.length < used + series1.size() + series2.size()) {
+                phases = Arrays.copyOf(phases, Math.max(phases.length * 2, used + series1.size() + series2.size()));
+            }
+            if (bounds.length < 4 * (pairs + 1)) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            if (sums.length < pairs + 1) {
+                owners = Arrays.copyOf(owners, owners.length * 2);
+                sums = Arrays.copyOf(sums, sums.length * 2);
+                pathLengths = Arrays.copyOf(pathLengths, pathLengths.length * 2);
+            }
+            owners[pairs] = owner;
+            bounds[4 * pairs] = used;
+            bounds[4 * pairs + 1] = series1.size();
+            series1.copyTo(phases, used);
+            used += series1.size();
+            bounds[4 * pairs + 2] = used;
+            bounds[4 * pairs + 3] = series2.size();
+            series2.copyTo(phases, used);
+            used += series2.size();
+            pairs++;
+        }
+    }
+
+    // Aligns the pairs [from, to) of a DtwScratch, splitting the range in halves while each half is still
+    // worth a task. Every pair's result goes to its own slot, so the tasks never share state.
+    private static class DtwTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final DtwScratch scratch;
+        private final int band;
+        private final int from;
+        private final int to;
+
+        DtwTask(DtwScratch scratch, int band, int from, int to) {
+            this.scratch = scratch;
+            this.band = band;
+            this.from = from;
+            this.to = to;
+        }
+
+        // Upper bound of the DTW cells to fill for the pairs [from, to)
+        static long cells(DtwScratch scratch, int band, int from, int to) {
+            long cells = 0;
+            for (int pair = from; pair < to; pair++) {
+                long n1 = scratch.bounds[4 * pair + 1];
+                long n2 = scratch.bounds[4 * pair + 3];
+                cells += band > 0 ? n1 * Math.min(n2, 2L * band + 1) : n1 * n2;
+            }
+            return cells;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && cells(scratch, band, from, to) >= PARALLEL_DTW_CELLS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DtwTask(scratch, band, from, middle), new DtwTask(scratch, band, middle, to));
+            } else {
+                align(scratch, band, from, to);
+            }
+        }
+
+        // Align the pairs [from, to) on the calling thread
+        static void align(DtwScratch scratch, int band, int from, int to) {
+            DtwKernel kernel = DtwKernel.forCurrentThread();
+            int[] bounds = scratch.bounds;
+            for (int pair = from; pair < to; pair++) {
+                scratch.sums[pair] = kernel.alignedPhaseDiffSum(scratch.phases, bounds[4 * pair], bounds[4 * pair + 1],
+                        scratch.phases, bounds[4 * pair + 2], bounds[4 * pair + 3], band);
+                scratch.pathLengths[pair] = kernel.getPathLength();
+            }
+        }
+    }
+
+    // Read-only list view over a fixed range of ring buffer sequence numbers
+    private class TagRecordView extends AbstractList<Map<String, Object>> {
+        private final long start;
+        private final long end;
+
+        TagRecordView(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Map<String, Object> get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            long seq = start + index;
+            synchronized (tagRecords) {
+                if (!tagRecords.contains(seq)) {
+                    // The record was overwritten or cleared after the view was taken
+                    throw new ConcurrentModificationException("Tag record " + seq + " is no longer buffered");
+                }
+                Map<String, Object> tagRecord = new HashMap<>();
+                tagRecord.put("epc", epcTable.name(tagRecords.epcId(seq)));
+                tagRecord.put("timestamp", tagRecords.timestamp(seq));
+                tagRecord.put("channel", tagRecords.channel(seq));
+                tagRecord.put("phase", tagRecords.phase(seq));
+                tagRecord.put("rssi", tagRecords.rssi(seq));
+                return tagRecord;
+            }
+        }
+
+        @Override
+        public int size() {
+            return (int) (end - start);
+        }
+    }
+}
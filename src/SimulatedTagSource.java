@@ -0,0 +1,151 @@
+package gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+// Synthetic tag source for exercising the processing path without reader hardware.
+// Generates reads of the configured EPCs at an arbitrary rate with FCC-style channel hopping, a per-channel
+// phase offset shared by all tags, slow common drift, Gaussian phase noise, occasional 180 degree flips
+// and noisy RSSI. The two tags of a sensor differ by a slowly oscillating phase difference, so the
+// computed value moves like a real sensor would. In spatial mode reads are spread over the antenna ports and
+// each port's zone adds its own offset to the sensing difference. Reads go through the same ingest queue as
+// the reader's.
+public class SimulatedTagSource extends QueuedTagSource {
+
+    private static final double FIRST_CHANNEL_MHZ = 902.75;
+    private static final double CHANNEL_SPACING_MHZ = 0.5;
+    private static final double SENSING_PERIOD_SECONDS = 60;
+
+    private final ConfigSnapshot.SimulatorConfig sim;
+    private final Random random;
+
+    private final int[] epcIds;            // Simulated EPCs
+    private final double[] epcOffsets;     // Fixed phase offset of each simulated EPC, shared within a sensor
+    private final double[] sensingDiffs;   // Mean phase difference to the sensor's reference tag, 0 for references
+    private final double[] channelsMhz;    // Hopping sequence
+    private final double[] channelOffsets; // Frequency dependent phase offset of each hop
+    private final int[] ports;             // Antenna ports reads are reported on
+    private final double[] portDiffs;      // Phase difference each port's zone adds to the sensing tags
+
+    private volatile boolean running = false;
+
+    public SimulatedTagSource(TagData tagData, ConfigSnapshot.ReaderEndpoint endpoint) {
+        super(tagData, endpoint);
+        this.sim = snapshot.getSimulator();
+        this.random = new Random(sim.getSeed() + endpoint.getIndex());
+
+        // Simulate every EPC of the selected sensors; the first EPC of each is the reference tag
+        List<Integer> ids = new ArrayList<>();
+        List<Double> offsets = new ArrayList<>();
+        List<Double> diffs = new ArrayList<>();
+        for (ConfigSnapshot.SensorConfig sensor : snapshot.getSensors().values()) {
+            if (!sim.getSensors().isEmpty() && !sim.getSensors().contains(sensor.getName())) {
+                continue;
+            }
+            double offset = random.nextDouble() * 360;
+            for (int i = 0; i < sensor.getEpcs().size(); i++) {
+                ids.add(sensor.getEpcId(i));
+                offsets.add(offset);
+                diffs.add(i == 0 ? 0.0 : 10 + random.nextDouble() * 50);
+            }
+        }
+        this.epcIds = ids.stream().mapToInt(Integer::intValue).toArray();
+        this.epcOffsets = offsets.stream().mapToDouble(Double::doubleValue).toArray();
+        this.sensingDiffs = diffs.stream().mapToDouble(Double::doubleValue).toArray();
+
+        // Pseudo-random hopping order over the channel plan
+        int channelCount = Math.max(1, sim.getChannels());
+        this.channelsMhz = new double[channelCount];
+        this.channelOffsets = new double[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            channelsMhz[i] = FIRST_CHANNEL_MHZ + CHANNEL_SPACING_MHZ * i;
+            channelOffsets[i] = random.nextDouble() * 360;
+        }
+        for (int i = channelCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double mhz = channelsMhz[i];
+            channelsMhz[i] = channelsMhz[j];
+            channelsMhz[j] = mhz;
+        }
+
+        ConfigSnapshot.SpatialConfig spatial = snapshot.getSpatial();
+        this.ports = spatial.isEnabled() ? spatial.getPorts().stream().mapToInt(Integer::intValue).toArray() : new int[] {1};
+        this.portDiffs = new double[ports.length];
+        for (int i = 1; i < ports.length; i++) {
+            portDiffs[i] = random.nextDouble() * 30;
+        }
+    }
+
+    // Generate reads until stopped
+    @Override
+    public void startReading() {
+        if (epcIds.length == 0) {
+            System.out.println("Simulator " + getName() + " has no EPCs to simulate");
+            stats.fail("no EPCs to simulate");
+            return;
+        }
+        System.out.println("Starting the simulator " + getName() + " at " + (sim.getRate() > 0 ? sim.getRate() + " reads/s" : "full speed"));
+        running = true;
+        startConsumers();
+        stats.setState(ReaderStats.State.RUNNING);
+
+        long startNanos = System.nanoTime();
+        long startMicros = System.currentTimeMillis() * 1000;
+        long produced = 0;
+        try {
+            while (running) {
+                long elapsedNanos = System.nanoTime() - startNanos;
+                long due = sim.getRate() > 0 ? (long) (elapsedNanos * sim.getRate() / 1e9) : produced + 1024;
+                if (due <= produced) {
+                    LockSupport.parkNanos(200_000); // Ahead of schedule
+                    continue;
+                }
+                for (; produced < due && running; produced++) {
+                    // Spread the batch evenly over simulated time so timestamps follow the configured rate
+                    long offsetMicros = sim.getRate() > 0 ? (long) (produced * 1e6 / sim.getRate()) : elapsedNanos / 1000;
+                    generateRead(startMicros + offsetMicros, offsetMicros / 1e6);
+                }
+            }
+        } finally {
+            stopConsumers();
+            stats.setState(ReaderStats.State.STOPPED);
+        }
+    }
+
+    @Override
+    public void stopReader() {
+        running = false;
+    }
+
+    private void generateRead(long timestamp, double seconds) {
+        stats.onReported();
+        int zone = ports.length > 1 ? random.nextInt(ports.length) : 0;
+        stats.onAntenna(ports[zone]);
+
+        int tag = random.nextInt(epcIds.length + sim.getForeignTags());
+        double rssi = sim.getRssi() + random.nextGaussian() * 2;
+        // Foreign or weak tag, filtered like the reader's
+        if (rssi <= MIN_RSSI) {
+            stats.onDropped(ReaderStats.Drop.RSSI);
+            return;
+        }
+        if (tag >= epcIds.length) {
+            stats.onDropped(ReaderStats.Drop.UNKNOWN_EPC);
+            return;
+        }
+
+        int hop = (int) ((long) (seconds * 1000 / Math.max(1, sim.getDwellMillis())) % channelsMhz.length);
+        double diff = sensingDiffs[tag] > 0 ? sensingDiffs[tag] + portDiffs[zone] : 0;
+        double sensing = diff * (1 + 0.2 * Math.sin(2 * Math.PI * seconds / SENSING_PERIOD_SECONDS));
+        double phase = epcOffsets[tag] + channelOffsets[hop] + sim.getPhaseDrift() * seconds + sensing
+                + random.nextGaussian() * sim.getPhaseNoise();
+        if (random.nextDouble() < sim.getFlipProbability()) {
+            phase += 180;
+        }
+        phase = ((phase % 360) + 360) % 360;
+
+        submit(ports[zone], epcIds[tag], timestamp, channelsMhz[hop], phase, rssi);
+    }
+}
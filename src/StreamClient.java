@@ -0,0 +1,252 @@
+package gui;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+// One WebSocket client of the DataStreamer: what it subscribed to and its bounded outbound queues.
+// Frames are queued by the publishing thread and only handed to the connection while it has few unsent
+// frames, so a slow client backs up its own queues (dropping or coalescing) instead of buffering without
+// bound or holding up the other clients. Results and raw read batches are queued separately so
+// coalescing results never discards reads.
+public class StreamClient {
+
+    // Frames the connection may hold unsent before the client's queues start backing up
+    private static final int MAX_UNSENT_FRAMES = 8;
+
+    public enum Format {
+        JSON, BINARY;
+
+        static Format parse(String format) {
+            return "binary".equalsIgnoreCase(format) ? BINARY : JSON;
+        }
+    }
+
+    public enum Policy {
+        DROP,     // Keep up to the queue capacity, dropping the oldest frame when full
+        COALESCE; // Keep only the newest frame
+
+        static Policy parse(String policy) {
+            return "drop".equalsIgnoreCase(policy) ? DROP : COALESCE;
+        }
+    }
+
+    private final WebSocket conn;
+    private final int capacity;
+    private final int rawCapacity;
+    private final ArrayDeque<Object> pending = new ArrayDeque<>(); // String or ByteBuffer result frames
+    private final ArrayDeque<ByteBuffer> pendingRaw = new ArrayDeque<>(); // Raw read batches
+    private volatile Subscription subscription;
+
+    private long lastResultMillis = Long.MIN_VALUE / 2;
+    private long sent = 0;
+    private long dropped = 0;
+    private long rawDropped = 0;
+
+    public StreamClient(WebSocket conn, Subscription subscription, int capacity, int rawCapacity) {
+        this.conn = conn;
+        this.subscription = subscription;
+        this.capacity = Math.max(1, capacity);
+        this.rawCapacity = Math.max(1, rawCapacity);
+    }
+
+    public WebSocket getConnection() {
+        return conn;
+    }
+
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public void setSubscription(Subscription subscription) {
+        this.subscription = subscription;
+    }
+
+    // Whether the client wants a result computed at this time, given its rate. slackMillis absorbs the
+    // jitter of the compute ticks so a rate matching theirs gets every tick.
+    synchronized boolean isResultDue(long now, long slackMillis) {
+        if (now - lastResultMillis < subscription.getIntervalMillis() - slackMillis) {
+            return false;
+        }
+        lastResultMillis = now;
+        return true;
+    }
+
+    // Queue a frame according to the subscription's policy
+    synchronized void offer(Object frame) {
+        if (subscription.getPolicy() == Policy.COALESCE) {
+            dropped += pending.size();
+            pending.clear();
+        } else if (pending.size() == capacity) {
+            pending.pollFirst();
+            dropped++;
+        }
+        pending.addLast(frame);
+    }
+
+    // Queue a raw read batch, dropping the oldest when full; the batch sequence numbers reveal the gap
+    synchronized void offerRaw(ByteBuffer batch) {
+        if (pendingRaw.size() == rawCapacity) {
+            pendingRaw.pollFirst();
+            rawDropped++;
+        }
+        pendingRaw.addLast(batch);
+    }
+
+    // Hand queued frames to the connection while it keeps up, results first
+    synchronized void flush() {
+        while (!pending.isEmpty() && canSend()) {
+            Object frame = pending.pollFirst();
+            if (frame instanceof ByteBuffer) {
+                conn.send((ByteBuffer) frame);
+            } else {
+                conn.send((String) frame);
+            }
+            sent++;
+        }
+        while (!pendingRaw.isEmpty() && canSend()) {
+            conn.send(pendingRaw.pollFirst());
+            sent++;
+        }
+    }
+
+    private boolean canSend() {
+        if (!conn.isOpen()) {
+            return false;
+        }
+        if (conn instanceof WebSocketImpl) {
+            return ((WebSocketImpl) conn).outQueue.size() < MAX_UNSENT_FRAMES;
+        }
+        return !conn.hasBufferedData();
+    }
+
+    // Queued results, queued raw batches and frames the connection holds unsent
+    public synchronized int getPendingResults() {
+        return pending.size();
+    }
+
+    public synchronized int getPendingRaw() {
+        return pendingRaw.size();
+    }
+
+    public int getUnsentFrames() {
+        if (conn instanceof WebSocketImpl) {
+            return ((WebSocketImpl) conn).outQueue.size();
+        }
+        return conn.hasBufferedData() ? 1 : 0;
+    }
+
+    public synchronized long getSent() {
+        return sent;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getRawDropped() {
+        return rawDropped;
+    }
+
+    // What a client receives: sensors, fields, rate, frame format and queue policy of the results, and
+    // whether it wants the raw reads
+    public static final class Subscription {
+
+        private final Set<String> sensors; // Empty for all sensors
+        private final Set<String> fields;  // Empty for all fields
+        private final long intervalMillis;
+        private final Format format;
+        private final Policy policy;
+        private final boolean results;
+        private final boolean raw;
+
+        public Subscription(Set<String> sensors, Set<String> fields, long intervalMillis, Format format, Policy policy,
+                            boolean results, boolean raw) {
+            this.sensors = Collections.unmodifiableSet(sensors);
+            this.fields = Collections.unmodifiableSet(fields);
+            this.intervalMillis = intervalMillis;
+            this.format = format;
+            this.policy = policy;
+            this.results = results;
+            this.raw = raw;
+        }
+
+        // Subscription of a client that never sent one: all results as JSON every <stream_interval_ms>
+        static Subscription defaults(long intervalMillis) {
+            return new Subscription(Collections.emptySet(), Collections.emptySet(), intervalMillis, Format.JSON, Policy.COALESCE,
+                    true, false);
+        }
+
+        // Apply a {"sensors": [...], "fields": [...], "rate_hz": 20, "format": "binary", "policy": "drop",
+        // "results": true, "raw": true} request; anything left out keeps its current value
+        Subscription with(JsonObject request) {
+            Set<String> sensors = request.has("sensors") ? strings(request.get("sensors").getAsJsonArray()) : this.sensors;
+            Set<String> fields = request.has("fields") ? strings(request.get("fields").getAsJsonArray()) : this.fields;
+            long intervalMillis = this.intervalMillis;
+            if (request.has("rate_hz")) {
+                double rate = request.get("rate_hz").getAsDouble();
+                intervalMillis = rate > 0 ? (long) (1000 / rate) : 0;
+            }
+            Format format = request.has("format") ? Format.parse(request.get("format").getAsString()) : this.format;
+            Policy policy = request.has("policy") ? Policy.parse(request.get("policy").getAsString()) : this.policy;
+            boolean results = request.has("results") ? request.get("results").getAsBoolean() : this.results;
+            boolean raw = request.has("raw") ? request.get("raw").getAsBoolean() : this.raw;
+            return new Subscription(sensors, fields, intervalMillis, format, policy, results, raw);
+        }
+
+        private static Set<String> strings(JsonArray array) {
+            Set<String> strings = new LinkedHashSet<>();
+            for (JsonElement element : array) {
+                strings.add(element.getAsString());
+            }
+            return strings;
+        }
+
+        // Results of a sensor's antenna ports ("soil@2") go to clients of the sensor as well
+        public boolean wantsSensor(String sensor) {
+            return sensors.isEmpty() || sensors.contains(sensor) || sensors.contains(ConfigSnapshot.SpatialConfig.sensorOf(sensor));
+        }
+
+        public boolean wantsField(String field) {
+            return fields.isEmpty() || fields.contains(field);
+        }
+
+        public long getIntervalMillis() {
+            return intervalMillis;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        public Policy getPolicy() {
+            return policy;
+        }
+
+        // Whether the client receives the computed results
+        public boolean wantsResults() {
+            return results;
+        }
+
+        // Whether the client receives the raw read batches
+        public boolean wantsRaw() {
+            return raw;
+        }
+
+        @Override
+        public String toString() {
+            return "sensors=" + (sensors.isEmpty() ? "all" : sensors) + ", fields=" + (fields.isEmpty() ? "all" : fields)
+                    + ", interval=" + intervalMillis + " ms, " + format + ", " + policy + (results ? "" : ", no results")
+                    + (raw ? ", raw reads" : "");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package gui;
+
+import java.util.Arrays;
+
+// Incremental sliding-window phase difference between two EPCs.
+// Each read entering the window is paired with the latest read of the other EPC on the same channel
+// that is still inside the window; the wrapped difference of that pair is added to running sums and
+// removed again when the read leaves the window. The current average is then available in O(1).
+// Reads are addressed by the ring buffer sequence numbers handed out by TagRingBuffer. The caller decides
+// the window: reads enter in sequence order and leave oldest first.
+// Not thread-safe, callers synchronize around it together with the ring buffer it mirrors.
+public class StreamingPhaseDiff {
+
+    private final int capacity;
+
+    // Pair difference contributed by each buffered read (NaN if it had no partner), indexed like the ring
+    private final double[] pairDiffs;
+    private final int[] pairChannels;
+
+    private int epcId1 = -1;
+    private int epcId2 = -1;
+
+    // Latest read of each EPC per channel id
+    private long[] lastSeq1 = new long[0];
+    private long[] lastSeq2 = new long[0];
+    private double[] lastPhase1 = new double[0];
+    private double[] lastPhase2 = new double[0];
+
+    private double[] channelSums = new double[0];
+    private int[] channelMatches = new int[0];
+    private double totalSum = 0.0;
+    private int totalMatches = 0;
+
+    // Subtracting long-gone values slowly accumulates rounding error, so the sums are rebuilt once per buffer
+    private int leavesSinceResum = 0;
+    private long windowStart = 0; // Oldest read still in the window
+    private long windowEnd = 0;   // Sequence after the newest read
+
+    public StreamingPhaseDiff(int capacity) {
+        this.capacity = capacity;
+        this.pairDiffs = new double[capacity];
+        this.pairChannels = new int[capacity];
+        Arrays.fill(pairDiffs, Double.NaN);
+    }
+
+    // Start tracking a new EPC pair, dropping all accumulated state
+    public void reset(int epcId1, int epcId2) {
+        this.epcId1 = epcId1;
+        this.epcId2 = epcId2;
+        Arrays.fill(lastSeq1, Long.MIN_VALUE);
+        Arrays.fill(lastSeq2, Long.MIN_VALUE);
+        Arrays.fill(channelSums, 0.0);
+        Arrays.fill(channelMatches, 0);
+        totalSum = 0.0;
+        totalMatches = 0;
+        leavesSinceResum = 0;
+    }
+
+    // A read entered the window with the given sequence number
+    public void enter(long seq, int epcId, int channelId, double phase) {
+        int slot = slot(seq);
+        pairDiffs[slot] = Double.NaN;
+        windowEnd = seq + 1;
+        if (epcId != epcId1 && epcId != epcId2) {
+            return;
+        }
+        ensureChannel(channelId);
+
+        double diff = Double.NaN;
+        if (epcId == epcId1) {
+            if (lastSeq2[channelId] >= windowStart) {
+                diff = SensorPipeline.wrappedPhaseDiff(phase, lastPhase2[channelId]);
+            }
+            lastSeq1[channelId] = seq;
+            lastPhase1[channelId] = phase;
+        } else {
+            if (lastSeq1[channelId] >= windowStart) {
+                diff = SensorPipeline.wrappedPhaseDiff(lastPhase1[channelId], phase);
+            }
+            lastSeq2[channelId] = seq;
+            lastPhase2[channelId] = phase;
+        }
+
+        if (!Double.isNaN(diff)) {
+            pairDiffs[slot] = diff;
+            pairChannels[slot] = channelId;
+            channelSums[channelId] += diff;
+            channelMatches[channelId]++;
+            totalSum += diff;
+            totalMatches++;
+        }
+    }
+
+    // The read with the given sequence number left the window
+    public void leave(long seq) {
+        int slot = slot(seq);
+        double diff = pairDiffs[slot];
+        if (!Double.isNaN(diff)) {
+            int channelId = pairChannels[slot];
+            channelSums[channelId] -= diff;
+            channelMatches[channelId]--;
+            totalSum -= diff;
+            totalMatches--;
+            pairDiffs[slot] = Double.NaN;
+        }
+        windowStart = seq + 1;
+        if (++leavesSinceResum >= capacity) {
+            resum();
+        }
+    }
+
+    // Forget every read, e.g. after the ring buffer was cleared
+    public void clear() {
+        Arrays.fill(pairDiffs, Double.NaN);
+        reset(epcId1, epcId2);
+    }
+
+    // Average wrapped phase difference over all pairs in the window, 0 if there are none
+    public double average() {
+        return totalMatches > 0 ? totalSum / totalMatches : 0;
+    }
+
+    public int matches() {
+        return totalMatches;
+    }
+
+    // Average wrapped phase difference on one channel, NaN if there are no pairs on it
+    public double channelAverage(int channelId) {
+        if (channelId >= channelMatches.length || channelMatches[channelId] == 0) {
+            return Double.NaN;
+        }
+        return channelSums[channelId] / channelMatches[channelId];
+    }
+
+    // Rebuild the running sums from the per-read differences of the reads still in the window
+    private void resum() {
+        Arrays.fill(channelSums, 0.0);
+        Arrays.fill(channelMatches, 0);
+        totalSum = 0.0;
+        totalMatches = 0;
+        for (long seq = windowStart; seq < windowEnd; seq++) {
+            int slot = slot(seq);
+            double diff = pairDiffs[slot];
+            if (!Double.isNaN(diff)) {
+                channelSums[pairChannels[slot]] += diff;
+                channelMatches[pairChannels[slot]]++;
+                totalSum += diff;
+                totalMatches++;
+            }
+        }
+        leavesSinceResum = 0;
+    }
+
+    private void ensureChannel(int channelId) {
+        if (channelId < lastSeq1.length) {
+            return;
+        }
+        int oldLength = lastSeq1.length;
+        int length = Math.max(channelId + 1, oldLength * 2);
+        lastSeq1 = Arrays.copyOf(lastSeq1, length);
+        lastSeq2 = Arrays.copyOf(lastSeq2, length);
+        Arrays.fill(lastSeq1, oldLength, length, Long.MIN_VALUE);
+        Arrays.fill(lastSeq2, oldLength, length, Long.MIN_VALUE);
+        lastPhase1 = Arrays.copyOf(lastPhase1, length);
+        lastPhase2 = Arrays.copyOf(lastPhase2, length);
+        channelSums = Arrays.copyOf(channelSums, length);
+        channelMatches = Arrays.copyOf(channelMatches, length);
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % capacity);
+    }
+}
@@ -0,0 +1,90 @@
+package gui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Append-only binary recording of the raw reads of one tag source.
+// Layout: a header (magic, version, record size, then the EPC table as length-prefixed UTF-8 names so the
+// ids can be resolved against a different params.xml on replay) followed by fixed-width records of
+// epcId (int), antenna port (short, 0 if not reported), timestamp (long, microseconds), channel, phase and
+// rssi (doubles), all big-endian. Version 1 records lack the antenna port.
+// Records are collected in a direct buffer and written to the channel a batch at a time.
+public class TagCapture implements AutoCloseable {
+
+    static final int MAGIC = 0x53534350; // "SSCP"
+    static final short VERSION = 2;
+    static final int RECORD_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES + 3 * Double.BYTES;
+    static final int V1_RECORD_SIZE = RECORD_SIZE - Short.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer batch;
+    private long records = 0;
+
+    public TagCapture(Path path, EpcTable epcTable, int batchRecords) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.batch = ByteBuffer.allocateDirect(Math.max(1, batchRecords) * RECORD_SIZE);
+        writeHeader(epcTable);
+    }
+
+    private void writeHeader(EpcTable epcTable) throws IOException {
+        int size = Integer.BYTES + 2 * Short.BYTES + Integer.BYTES;
+        byte[][] names = new byte[epcTable.size()][];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = epcTable.name(id).getBytes(StandardCharsets.UTF_8);
+            size += Short.BYTES + names[id].length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(size);
+        header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putInt(names.length);
+        for (byte[] name : names) {
+            header.putShort((short) name.length).put(name);
+        }
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    // Append one read, writing the batch out once it is full
+    public synchronized void append(int antenna, int epcId, long timestamp, double channel, double phase, double rssi) throws IOException {
+        if (batch.remaining() < RECORD_SIZE) {
+            flush();
+        }
+        batch.putInt(epcId).putShort((short) antenna).putLong(timestamp).putDouble(channel).putDouble(phase).putDouble(rssi);
+        records++;
+    }
+
+    // Write the buffered records to the file
+    public synchronized void flush() throws IOException {
+        batch.flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
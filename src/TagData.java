@@ -1,28 +1,47 @@
 package gui;
 
-import com.dtw.FastDTW;
-import com.timeseries.TimeSeries;
-import com.util.DistanceFunction;
-import com.util.EuclideanDistance;
-import com.dtw.WarpPath;
-
 import java.io.FileWriter;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.jfree.data.json.impl.JSONArray;
 
 public class TagData {
 
-    private final List<Map<String, Object>> tagRecords;
+    // Notified of every read a pipeline accepted, on the thread that added it
+    public interface ReadListener {
+        void onRead(int reader, int antenna, int epcId, long timestamp, double channel, double phase, double rssi);
+    }
+
     private final int bufferSize;
-    private final int windowSize;
     private Configs config;
-    
-    private Set<String> epcs;
-    private Map<String, Object> sensorConfig;
 
-    private List<Double> phaseDifferences = new ArrayList<>();
+    // EPCs are stored by the numeric ids of the configuration's EPC table
+    private final EpcTable epcTable;
+
+    // One buffer and phase-difference pipeline per configured sensor and zone: shards[reader * zones + zone][sensor].
+    // A reader has one zone, or one per antenna port in spatial mode. Phase differences are only meaningful
+    // between reads of the same reader and port, and separate shards keep the readers' consumer threads from
+    // contending on the same locks.
+    private final SensorPipeline[][] shards;
+    private final ConfigSnapshot.SpatialConfig spatial;
+    private final int zones;
+    private final Map<String, Integer> sensorIndex;
+    private final ExecutorService workers; // Evaluates the sensors and zones in parallel
+    private final List<ReadListener> readListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLongArray filtered; // Reads no pipeline kept, by reader
+    private final List<String> readerNames;
+
+    // Most recent phase differences, one per compute tick; the full history goes to PhaseHistoryWriter
+    private final ArrayDeque<Double> phaseDifferences = new ArrayDeque<>();
+    private final int memoryPoints;
     
     // // Non-parameterized constructor (uses default sensorDef from configs)
     // public TagData() {
@@ -31,175 +50,276 @@ public class TagData {
 
     public TagData() {
         this.config = Configs.getCfgInstance();
+        ConfigSnapshot snapshot = config.getSnapshot();
         
         this.bufferSize = config.getMaxTagHistory();
-        
-        // Load EPCs from the configuration based on the sensor definition
-        refreshSensorConfigs();
-        System.out.println(config.getSensorDef() + " with epcs to capture:" + epcs);
-
-        // Load the window size from the config and calculate windowSize = sensor.window * read_rate
-        double window = (Double) sensorConfig.get("window");  // Read `window` from the config
-        int readRate = config.getReadRate(); // Fetch the read rate from config
-        this.windowSize = (int) (window * readRate);  // Calculate windowSize = window * read_rate
-        
-        this.tagRecords = Collections.synchronizedList(new ArrayList<>());
-    }
+        this.memoryPoints = Math.max(1, snapshot.getHistory().getMemoryPoints());
+        this.epcTable = snapshot.getEpcTable();
+
+        List<ConfigSnapshot.SensorConfig> sensors = new ArrayList<>(snapshot.getSensors().values());
+        Map<String, Integer> sensorIndex = new LinkedHashMap<>();
+        for (int i = 0; i < sensors.size(); i++) {
+            sensorIndex.put(sensors.get(i).getName(), i);
+        }
+        this.sensorIndex = Collections.unmodifiableMap(sensorIndex);
+
+        this.spatial = snapshot.getSpatial();
+        this.zones = spatial.getZoneCount();
+        this.shards = new SensorPipeline[snapshot.getReaders().size() * zones][sensors.size()];
+        for (int shard = 0; shard < shards.length; shard++) {
+            for (int i = 0; i < sensors.size(); i++) {
+                shards[shard][i] = new SensorPipeline(sensors.get(i), epcTable, bufferSize, snapshot.getDtwBand(),
+                        snapshot.isBulkPhaseKernel());
+            }
+        }
+
+        this.filtered = new AtomicLongArray(snapshot.getReaders().size());
+        List<String> readerNames = new ArrayList<>();
+        for (ConfigSnapshot.ReaderEndpoint endpoint : snapshot.getReaders()) {
+            readerNames.add(endpoint.getName());
+        }
+        this.readerNames = readerNames;
+        Metrics.get().register(new PipelineMetrics());
 
-    // Method to refresh both sensorConfig and EPCs from the configuration
-    private void refreshSensorConfigs() {
-        String sensorDef = config.getSensorDef();  // Get current sensor definition
-        this.sensorConfig = config.getSensorConfig(sensorDef);  // Refresh sensor configuration
-        List<String> epcList = (List<String>) sensorConfig.get("epcs");  // Get updated EPC list
-        this.epcs = new HashSet<>(epcList);  // Update the EPC set
+        int threads = Math.max(1, Math.min(sensors.size() * zones, Runtime.getRuntime().availableProcessors()));
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "sensor-pipeline");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (snapshot.isMultiSensor()) {
+            System.out.println("Capturing all sensors: " + sensorIndex.keySet());
+        } else {
+            System.out.println(config.getSensorDef() + " with epcs to capture:" + config.getActiveSensor().getEpcs());
+        }
+        if (spatial.isEnabled()) {
+            System.out.println("Spatial mode on antenna ports " + spatial.getPorts() + (spatial.isSeparate() ? ", published per port" : ", fused"));
+        }
     }
 
     // Add a tag to the records
     public void addTag(String epc, String timestamp, double channel, double phase, double rssi) {
-        refreshSensorConfigs();
-        if (!epcs.contains(epc)) {
-            return;
+        int epcId = epcTable.find(epc);
+        if (epcId >= 0) {
+            addTag(epcId, parseTimestamp(timestamp), channel, phase, rssi);
         }
+    }
 
-        Map<String, Object> tagRecord = new HashMap<>();
-        tagRecord.put("epc", epc);
-        tagRecord.put("timestamp", timestamp);  // String timestamp
-        tagRecord.put("channel", channel);
-        tagRecord.put("phase", phase);
-        tagRecord.put("rssi", rssi);
-        tagRecords.add(tagRecord);
+    // Add a tag read by the first reader, on its first antenna port in spatial mode
+    public void addTag(int epcId, long timestamp, double channel, double phase, double rssi) {
+        addTag(0, spatial.getPort(0), epcId, timestamp, channel, phase, rssi);
+    }
 
-        // Check if tagRecords exceeds the buffer size, and clear/remove records if necessary
-        if (tagRecords.size() > bufferSize) {
-            // Clear the oldest record(s) or trim the list to fit the buffer size
-            tagRecords.remove(0); // Removes the oldest entry (FIFO)
+    // Add a tag to the records of the shard of a reader and antenna port by EPC id and reader timestamp in
+    // microseconds, without allocating. In multi-sensor mode every sensor owning the EPC keeps the read, otherwise
+    // only the selected sensor. In spatial mode, reads of ports outside <ports> are filtered.
+    public void addTag(int reader, int antenna, int epcId, long timestamp, double channel, double phase, double rssi) {
+        int zone = spatial.zone(antenna);
+        if (zone < 0) {
+            filtered.incrementAndGet(reader);
+            return;
+        }
+        int shard = reader * zones + zone;
+        ConfigSnapshot snapshot = config.getSnapshot();
+        boolean multiSensor = snapshot.isMultiSensor();
+        String sensorDef = snapshot.getSensorDef();
+        boolean accepted = false;
+        for (SensorPipeline pipeline : shards[shard]) {
+            if (pipeline.accepts(epcId) && (multiSensor || pipeline.getSensorName().equals(sensorDef))) {
+                pipeline.add(epcId, timestamp, channel, phase, rssi);
+                accepted = true;
+            }
+        }
+        if (accepted) {
+            for (ReadListener listener : readListeners) {
+                listener.onRead(reader, antenna, epcId, timestamp, channel, phase, rssi);
+            }
+        } else {
+            filtered.incrementAndGet(reader);
         }
     }
 
-    // Helper method to convert double[] to TimeSeries
-    private TimeSeries createTimeSeries(double[] sequence) {
-        return new TimeSeries(sequence);
+    // Reads of a reader that no sensor kept, e.g. reads of other sensors outside multi-sensor mode
+    public long getFiltered(int reader) {
+        return filtered.get(reader);
     }
 
-    // Performs dynamic time warping (DTW) matching between two sequences
-    private double[][] dtwMatching(double[] sequence1, double[] sequence2) {
-        DistanceFunction distFunc = new EuclideanDistance();
-        WarpPath warpPath = FastDTW.getWarpPathBetween(createTimeSeries(sequence1), createTimeSeries(sequence2), windowSize, distFunc);
+    public void addReadListener(ReadListener listener) {
+        readListeners.add(listener);
+    }
 
-        double[] warpedSeq1 = new double[warpPath.size()];
-        double[] warpedSeq2 = new double[warpPath.size()];
+    public void removeReadListener(ReadListener listener) {
+        readListeners.remove(listener);
+    }
 
-        for (int i = 0; i < warpPath.size(); i++) {
-            warpedSeq1[i] = sequence1[warpPath.get(i).getCol()];
-            warpedSeq2[i] = sequence2[warpPath.get(i).getRow()];
+    // Reader timestamps are reported as microseconds since epoch
+    private static long parseTimestamp(String timestamp) {
+        try {
+            return Long.parseLong(timestamp.trim());
+        } catch (NumberFormatException e) {
+            return System.currentTimeMillis() * 1000;
         }
-
-        return new double[][]{warpedSeq1, warpedSeq2};
     }
 
-    // Calculate the average phase difference across all channels using FastDTW and phase matching
+    // Calculate the average phase difference of the selected sensor
     public double calculateAvgPhaseDifference() {
-        // Ensure there are enough records to calculate
-        if (tagRecords.size() < 2) {
+        Integer sensor = sensorIndex.get(config.getSensorDef());
+        if (sensor == null) {
             return -1000;
         }
+        return calculateFused(sensor, config.isDtw(), config.isStreaming());
+    }
 
-        // Get the last windowSize tag records, or all records if fewer are available
-        try {
-            List<Map<String, Object>> tagRecordsSubset;
-            if (tagRecords.size() <= windowSize) {
-                tagRecordsSubset = new ArrayList<>(tagRecords);
-            } else {
-                tagRecordsSubset = tagRecords.subList(tagRecords.size() - windowSize, tagRecords.size());
+    // Keep a computed phase difference for saveAllPhaseDifferences; the ComputeScheduler records one per tick
+    public void recordPhaseDifference(double avgPhaseDiff) {
+        synchronized (phaseDifferences) {
+            if (phaseDifferences.size() == memoryPoints) {
+                phaseDifferences.pollFirst();
             }
-            // EPC selection
-            Iterator<String> epcIterator = epcs.iterator();
-            if (epcs.size() < 2) {
-                throw new IllegalArgumentException("At least two EPCs are required to calculate phase differences.");
+            phaseDifferences.addLast(avgPhaseDiff);
+        }
+    }
+
+    // Calculate the average phase difference of every configured sensor in parallel.
+    // Sensors without enough data map to -1000.
+    public Map<String, Double> calculateAllAvgPhaseDifferences() {
+        return calculateAvgPhaseDifferences(true, null, null);
+    }
+
+    // Calculate the average phase difference of every configured sensor, or only of the selected one, evaluating
+    // every zone in parallel and fusing each sensor's zones. In spatial mode the value of each sensor at each
+    // antenna port is also put into ports, if given, under its SpatialConfig.series name. Sensors measuring more
+    // than one EPC pair put the phase difference of every pair into pairs, if given, keyed like the published
+    // values; pairs without a value are NaN. Sensors and ports without enough data map to -1000.
+    public Map<String, Double> calculateAvgPhaseDifferences(boolean allSensors, Map<String, Double> ports, Map<String, double[]> pairs) {
+        boolean isDtw = config.isDtw();
+        boolean isStreaming = config.isStreaming();
+        Map<String, Integer> sensors = sensorIndex;
+        if (!allSensors) {
+            String sensorDef = config.getSensorDef();
+            Integer sensor = sensorIndex.get(sensorDef);
+            if (sensor == null) {
+                return Collections.singletonMap(sensorDef, -1000.0);
             }
-        
-            String epc1 = epcIterator.next();
-            String epc2 = epcIterator.next();
-        
-            Map<Double, List<Double>> phasesByChannelEpc1 = new HashMap<>();
-            Map<Double, List<Double>> phasesByChannelEpc2 = new HashMap<>();
-        
-            // Group phases by channels for both EPCs
-            for (Map<String, Object> tagRecord : tagRecordsSubset) {
-                double channel = (Double) tagRecord.get("channel");
-                double phase = (Double) tagRecord.get("phase");
-        
-                if (epc1.equals(tagRecord.get("epc"))) {
-                    phasesByChannelEpc1.computeIfAbsent(channel, k -> new ArrayList<>()).add(phase);
+            sensors = Collections.singletonMap(sensorDef, sensor);
+        }
+        // A single zone of a single sensor isn't worth handing to the workers
+        boolean inline = sensors.size() * zones == 1;
+        Map<String, List<Future<double[]>>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> sensor : sensors.entrySet()) {
+            List<Future<double[]>> zoneFutures = new ArrayList<>();
+            for (int zone = 0; zone < zones; zone++) {
+                int z = zone;
+                zoneFutures.add(inline ? CompletableFuture.completedFuture(calculateZone(sensor.getValue(), z, isDtw, isStreaming))
+                        : workers.submit(() -> calculateZone(sensor.getValue(), z, isDtw, isStreaming)));
+            }
+            futures.put(sensor.getKey(), zoneFutures);
+        }
+
+        Map<String, Double> results = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Future<double[]>>> entry : futures.entrySet()) {
+            boolean multiPair = sensorConfig(sensors.get(entry.getKey())).getPairCount() > 1;
+            List<double[]> zonePairs = new ArrayList<>();
+            double sum = 0;
+            int count = 0;
+            for (int zone = 0; zone < zones; zone++) {
+                double[] zoneValues = null;
+                try {
+                    zoneValues = entry.getValue().get(zone).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    // No value for this zone
                 }
-                if (epc2.equals(tagRecord.get("epc"))) {
-                    phasesByChannelEpc2.computeIfAbsent(channel, k -> new ArrayList<>()).add(phase);
+                double avgPhaseDiff = zoneValues != null ? SensorPipeline.average(zoneValues) : -1000;
+                if (avgPhaseDiff != -1000) {
+                    sum += avgPhaseDiff;
+                    count++;
+                    zonePairs.add(zoneValues);
                 }
-            }
-        
-            double totalPhaseDiff = 0.0;
-            int totalMatches = 0;
-        
-            // Iterate over all channels present in both EPCs
-            for (double channel : phasesByChannelEpc1.keySet()) {
-                if (phasesByChannelEpc2.containsKey(channel)) {
-                    List<Double> phaseList1 = phasesByChannelEpc1.get(channel);
-                    List<Double> phaseList2 = phasesByChannelEpc2.get(channel);
-        
-                    // Convert phase lists to arrays
-                    double[] phases1 = phaseList1.stream().mapToDouble(Double::doubleValue).toArray();
-                    double[] phases2 = phaseList2.stream().mapToDouble(Double::doubleValue).toArray();
-
-                    boolean isDtw = config.isDtw();
-                    double[] warpedSeq1 = new double[0];
-                    double[] warpedSeq2 = new double[0];
-                    // Perform DTW matching between the two phase sequences
-                    if (isDtw) {
-                        double[][] warpedPhases = dtwMatching(phases1, phases2);
-                        warpedSeq1 = warpedPhases[0];
-                        warpedSeq2 = warpedPhases[1];
-                    }
-                    else {
-                        int targetLength = Math.min(phases1.length, phases2.length);
-                        warpedSeq1 = Arrays.copyOf(phases1, targetLength);
-                        warpedSeq2 = Arrays.copyOf(phases2, targetLength);
-                    }
-        
-                    // Calculate phase differences after alignment
-                    for (int i = 0; i < warpedSeq1.length; i++) {
-                        double diff = Math.abs(warpedSeq1[i] - warpedSeq2[i]);
-                        if (diff > 270) {
-                            diff = Math.abs(diff - 360);
-                        } else if (diff > 135) {
-                            diff = Math.abs(diff - 180);
-                        }
-                        totalPhaseDiff += diff;
-                        totalMatches++;
+                if (ports != null && spatial.isEnabled()) {
+                    String series = ConfigSnapshot.SpatialConfig.series(entry.getKey(), spatial.getPort(zone));
+                    ports.put(series, avgPhaseDiff);
+                    if (pairs != null && multiPair && spatial.isSeparate() && zoneValues != null) {
+                        pairs.put(series, zoneValues);
                     }
                 }
             }
-        
-            // Return the average phase difference across all channels
-            Double avgPhaseDiff = totalMatches > 0 ? totalPhaseDiff / totalMatches : 0;
-            phaseDifferences.add(avgPhaseDiff);
+            results.put(entry.getKey(), count > 0 ? sum / count : -1000);
+            if (pairs != null && multiPair && !spatial.isSeparate() && !zonePairs.isEmpty()) {
+                pairs.put(entry.getKey(), fuse(zonePairs));
+            }
+        }
+        return results;
+    }
 
-            return avgPhaseDiff;
-        } catch (Exception e) {
-            // Do nothing
-            return -1000;
+    // Mean of a sensor's phase difference over the zones that have enough data for it, -1000 if none do
+    private double calculateFused(int sensor, boolean isDtw, boolean isStreaming) {
+        double sum = 0;
+        int count = 0;
+        for (int zone = 0; zone < zones; zone++) {
+            double[] pairs = calculateZone(sensor, zone, isDtw, isStreaming);
+            if (pairs != null) {
+                sum += SensorPipeline.average(pairs);
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : -1000;
+    }
+
+    // Phase difference of each of a sensor's EPC pairs at one zone, the mean over the readers that have enough
+    // data for it; null if none do
+    private double[] calculateZone(int sensor, int zone, boolean isDtw, boolean isStreaming) {
+        List<double[]> readers = new ArrayList<>();
+        for (int shard = zone; shard < shards.length; shard += zones) {
+            double[] pairs = shards[shard][sensor].calculatePairPhaseDifferences(isDtw, isStreaming);
+            if (pairs != null) {
+                readers.add(pairs);
+            }
+        }
+        return readers.isEmpty() ? null : fuse(readers);
+    }
+
+    // Mean of every pair over the given results, skipping pairs without a value
+    private static double[] fuse(List<double[]> results) {
+        if (results.size() == 1) {
+            return results.get(0);
         }
+        double[] fused = new double[results.get(0).length];
+        for (int pair = 0; pair < fused.length; pair++) {
+            double sum = 0;
+            int count = 0;
+            for (double[] result : results) {
+                if (!Double.isNaN(result[pair])) {
+                    sum += result[pair];
+                    count++;
+                }
+            }
+            fused[pair] = count > 0 ? sum / count : Double.NaN;
+        }
+        return fused;
+    }
+
+    private ConfigSnapshot.SensorConfig sensorConfig(int sensor) {
+        return shards[0][sensor].getSensor();
     }
 
     // Clear all stored tag records
     public void clearData() {
-        tagRecords.clear();
+        for (SensorPipeline[] shard : shards) {
+            for (SensorPipeline pipeline : shard) {
+                pipeline.clear();
+            }
+        }
     }
 
-    // Get all tag records
+    // Get all tag records of the selected sensor
     public List<Map<String, Object>> getAllTags() {
-        return tagRecords;
+        return getLastNTags(Integer.MAX_VALUE);
     }
 
+    // Save the phase differences kept in memory (the last <memory_points>) as one JSON array
     public void saveAllPhaseDifferences() {
         try {
             if (phaseDifferences.size() > 0 && config.isStoreData()) {
@@ -209,7 +329,9 @@ public class TagData {
 
                 // Create a JSON array from the phaseDifferences list
                 JSONArray jsonArray = new JSONArray();
-                jsonArray.addAll(phaseDifferences);
+                synchronized (phaseDifferences) {
+                    jsonArray.addAll(phaseDifferences);
+                }
                 
                 // Write the JSON array to the file
                 FileWriter file = new FileWriter(filename);
@@ -225,20 +347,156 @@ public class TagData {
         }
     }
 
-    // Get the last N tag records, or all records if fewer are available
+    // Get the last N tag records of the selected sensor from each reader, or all records if fewer are available.
+    // Records are grouped by reader and antenna port. The returned list is a read-only view over the ring buffers; records are
+    // only materialized when accessed.
     public List<Map<String, Object>> getLastNTags(int N) {
-        List<Map<String, Object>> tagRecordsSubset;
+        Integer sensor = sensorIndex.get(config.getSensorDef());
+        if (sensor == null) {
+            return Collections.emptyList();
+        }
+        if (shards.length == 1) {
+            return shards[0][sensor].getLastNTags(N);
+        }
+        List<List<Map<String, Object>>> views = new ArrayList<>();
+        for (SensorPipeline[] shard : shards) {
+            views.add(shard[sensor].getLastNTags(N));
+        }
+        return concat(views);
+    }
 
-        if (tagRecords.size() <= N) {
-            tagRecordsSubset = new ArrayList<>(tagRecords);
-        } else {
-            tagRecordsSubset = tagRecords.subList(tagRecords.size() - N, tagRecords.size());
+    // Get the tag records of the selected sensor with reader timestamps (microseconds) in [fromMicros, toMicros),
+    // grouped by reader like getLastNTags
+    public List<Map<String, Object>> getTagsBetween(long fromMicros, long toMicros) {
+        Integer sensor = sensorIndex.get(config.getSensorDef());
+        if (sensor == null) {
+            return Collections.emptyList();
+        }
+        if (shards.length == 1) {
+            return shards[0][sensor].getTagsBetween(fromMicros, toMicros);
         }
-        return tagRecordsSubset;
+        List<List<Map<String, Object>>> views = new ArrayList<>();
+        for (SensorPipeline[] shard : shards) {
+            views.add(shard[sensor].getTagsBetween(fromMicros, toMicros));
+        }
+        return concat(views);
+    }
+
+    // Read-only concatenation of the per-reader views
+    private static List<Map<String, Object>> concat(List<List<Map<String, Object>>> views) {
+        return new AbstractList<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> get(int index) {
+                for (List<Map<String, Object>> view : views) {
+                    if (index < view.size()) {
+                        return view.get(index);
+                    }
+                    index -= view.size();
+                }
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+
+            @Override
+            public int size() {
+                int size = 0;
+                for (List<Map<String, Object>> view : views) {
+                    size += view.size();
+                }
+                return size;
+            }
+        };
     }
 
-    // Method to return the size of tagRecords
+    // Method to return the size of tagRecords of the selected sensor across all readers
     public int getTagRecordsSize() {
-        return tagRecords.size();
+        Integer sensor = sensorIndex.get(config.getSensorDef());
+        if (sensor == null) {
+            return 0;
+        }
+        int size = 0;
+        for (SensorPipeline[] shard : shards) {
+            size += shard[sensor].size();
+        }
+        return size;
+    }
+
+    // Number of shards, one per reader and zone
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Ring buffer occupancy and phase difference latencies of every pipeline
+    private class PipelineMetrics implements Metrics.Collector {
+
+        @Override
+        public void collect(StringBuilder out) {
+            Metrics.header(out, "sensync_ring_records", "gauge", "Reads held in a sensor's ring buffer");
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (SensorPipeline pipeline : shards[shard]) {
+                    Metrics.sample(out, "sensync_ring_records", labels(shard, pipeline), pipeline.size());
+                }
+            }
+            Metrics.header(out, "sensync_ring_capacity", "gauge", "Capacity of a sensor's ring buffer");
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (SensorPipeline pipeline : shards[shard]) {
+                    Metrics.sample(out, "sensync_ring_capacity", labels(shard, pipeline), pipeline.capacity());
+                }
+            }
+            Metrics.header(out, "sensync_window_records", "gauge", "Reads inside a sensor's time window");
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (SensorPipeline pipeline : shards[shard]) {
+                    Metrics.sample(out, "sensync_window_records", labels(shard, pipeline), pipeline.windowSize());
+                }
+            }
+            Metrics.header(out, "sensync_filter_replaced_total", "counter", "Phases a sensor's Hampel filter replaced by the median");
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (SensorPipeline pipeline : shards[shard]) {
+                    Metrics.sample(out, "sensync_filter_replaced_total", labels(shard, pipeline), pipeline.getFilterReplaced());
+                }
+            }
+            Metrics.header(out, "sensync_phase_diff_seconds", "summary", "Latency of a sensor's phase difference calculation");
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (SensorPipeline pipeline : shards[shard]) {
+                    pipeline.getPhaseDiffLatency().write(out, "sensync_phase_diff_seconds", labels(shard, pipeline));
+                }
+            }
+            Metrics.header(out, "sensync_dtw_seconds", "summary", "Latency of a sensor's DTW alignment");
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (SensorPipeline pipeline : shards[shard]) {
+                    pipeline.getDtwLatency().write(out, "sensync_dtw_seconds", labels(shard, pipeline));
+                }
+            }
+        }
+
+        @Override
+        public String summary() {
+            StringBuilder summary = new StringBuilder();
+            for (int shard = 0; shard < shards.length; shard++) {
+                for (SensorPipeline pipeline : shards[shard]) {
+                    if (summary.length() > 0) {
+                        summary.append("; ");
+                    }
+                    summary.append(readerNames.get(shard / zones));
+                    if (spatial.isEnabled()) {
+                        summary.append('@').append(spatial.getPort(shard % zones));
+                    }
+                    summary.append('/').append(pipeline.getSensorName())
+                            .append(" phase diff ").append(pipeline.getPhaseDiffLatency().summary());
+                    if (config.isDtw()) {
+                        summary.append(", dtw ").append(pipeline.getDtwLatency().summary());
+                    }
+                    summary.append(", ring ").append(pipeline.size()).append('/').append(pipeline.capacity());
+                }
+            }
+            return summary.toString();
+        }
+
+        private String labels(int shard, SensorPipeline pipeline) {
+            String labels = Metrics.label("reader", readerNames.get(shard / zones));
+            if (spatial.isEnabled()) {
+                labels += "," + Metrics.label("antenna", Integer.toString(spatial.getPort(shard % zones)));
+            }
+            return labels + "," + Metrics.label("sensor", pipeline.getSensorName());
+        }
     }
 }
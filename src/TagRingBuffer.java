@@ -0,0 +1,112 @@
+package gui;
+
+// Fixed-capacity, columnar ring buffer of tag reads.
+// Each read occupies one slot spread across parallel primitive arrays, so appending never allocates.
+// Reads are addressed by a monotonically increasing sequence number; once the buffer is full the
+// oldest read is overwritten. The buffer itself is not thread-safe, callers synchronize around it.
+public class TagRingBuffer {
+
+    private final int capacity;
+
+    private final int[] epcIds;
+    private final long[] timestamps;
+    private final double[] channels;
+    private final double[] phases;
+    private final double[] rssis;
+
+    private long nextSequence = 0;  // Sequence number the next append will get
+    private long firstSequence = 0; // Sequence number of the oldest retained read
+
+    public TagRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ring buffer capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.epcIds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.channels = new double[capacity];
+        this.phases = new double[capacity];
+        this.rssis = new double[capacity];
+    }
+
+    // Append a read in O(1), overwriting the oldest one when full. Returns the sequence number of the read.
+    public long append(int epcId, long timestamp, double channel, double phase, double rssi) {
+        long sequence = nextSequence++;
+        int slot = slot(sequence);
+        epcIds[slot] = epcId;
+        timestamps[slot] = timestamp;
+        channels[slot] = channel;
+        phases[slot] = phase;
+        rssis[slot] = rssi;
+
+        if (nextSequence - firstSequence > capacity) {
+            firstSequence++; // Oldest read was just overwritten
+        }
+        return sequence;
+    }
+
+    public void clear() {
+        firstSequence = nextSequence;
+    }
+
+    public int size() {
+        return (int) (nextSequence - firstSequence);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long firstSequence() {
+        return firstSequence;
+    }
+
+    public long nextSequence() {
+        return nextSequence;
+    }
+
+    // First sequence at or after from whose read is at or after the given timestamp, or nextSequence() if none.
+    // Binary search, so the timestamps must not decrease along the buffer.
+    public long lowerBound(long timestamp, long from) {
+        long low = Math.max(from, firstSequence);
+        long high = nextSequence;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (timestamps[slot(mid)] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Whether the read with the given sequence number is still held by the buffer
+    public boolean contains(long sequence) {
+        return sequence >= firstSequence && sequence < nextSequence;
+    }
+
+    public int epcId(long sequence) {
+        return epcIds[slot(sequence)];
+    }
+
+    public long timestamp(long sequence) {
+        return timestamps[slot(sequence)];
+    }
+
+    public double channel(long sequence) {
+        return channels[slot(sequence)];
+    }
+
+    public double phase(long sequence) {
+        return phases[slot(sequence)];
+    }
+
+    public double rssi(long sequence) {
+        return rssis[slot(sequence)];
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
@@ -0,0 +1,18 @@
+package gui;
+
+// Anything that produces tag reads for TagData: a physical Impinj reader, the simulator or a replay.
+// Sources feed one TagData shard each and expose the same health counters.
+public interface TagSource {
+
+    // Produce reads until stopped; blocks, so run it on a dedicated thread
+    void startReading();
+
+    // Stop producing, flush the reads still queued and release the source
+    void stopReader();
+
+    String getName();
+
+    ReaderStats getStats();
+
+    IngestQueue getIngestQueue();
+}